@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.html.types.benchmarks;
+
+/** Input text corpora shared by the benchmarks, selectable as a JMH {@code @Param}. */
+public enum Corpus {
+  /** Prose with no HTML metacharacters, the common case in rendered pages. */
+  CLEAN(
+      "The quick brown fox jumps over the lazy dog. Grüße aus Zürich, 東京 and 🎉 as well. "),
+
+  /** Markup-like text where nearly every token needs escaping. */
+  ESCAPE_HEAVY("<a href=\"x\" title='y'>&amp;</a><script>alert(\"<&>\")</script>"),
+
+  /** Mostly clean text with an occasional metacharacter, like typical user comments. */
+  MIXED("Tom & Jerry's \"best\" episodes are listed below, sorted by rating > 4 stars. "),
+
+  /** User-generated comment text with newlines, indentation and tabs. */
+  MULTILINE("Hi <b>all</b>,\r\n  indented line & more\n\tname:\t\tvalue\n\n  -- me\n");
+
+  private final String seed;
+
+  private Corpus(String seed) {
+    this.seed = seed;
+  }
+
+  /** Returns text of exactly {@code length} chars built by repeating this corpus' seed. */
+  public String text(int length) {
+    StringBuilder sb = new StringBuilder(length + seed.length());
+    while (sb.length() < length) {
+      sb.append(seed);
+    }
+    sb.setLength(length);
+    return sb.toString();
+  }
+}
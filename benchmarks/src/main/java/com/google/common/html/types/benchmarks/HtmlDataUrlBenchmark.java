@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.html.types.benchmarks;
+
+import com.google.common.html.types.SafeHtml;
+import com.google.common.html.types.SafeHtmls;
+import com.google.common.html.types.SafeUrl;
+import com.google.common.html.types.SafeUrls;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures the {@code SafeUrls.createHtmlDataUrl*} factories. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HtmlDataUrlBenchmark {
+
+  @Param({"CLEAN", "ESCAPE_HEAVY"})
+  public Corpus corpus;
+
+  @Param({"16", "1024", "65536"})
+  public int length;
+
+  private SafeHtml html;
+
+  @Setup
+  public void setUp() {
+    html = SafeHtmls.htmlEscape(corpus.text(length));
+  }
+
+  @Benchmark
+  public SafeUrl createHtmlDataUrl() {
+    return SafeUrls.createHtmlDataUrl(html);
+  }
+
+  @Benchmark
+  public SafeUrl createHtmlDataUrlBase64() {
+    return SafeUrls.createHtmlDataUrlBase64(html);
+  }
+
+  @Benchmark
+  public StringBuilder appendHtmlDataUrl() throws IOException {
+    return SafeUrls.appendHtmlDataUrl(new StringBuilder(), html);
+  }
+
+  @Benchmark
+  public StringBuilder appendHtmlDataUrlBase64() throws IOException {
+    return SafeUrls.appendHtmlDataUrlBase64(new StringBuilder(), html);
+  }
+}
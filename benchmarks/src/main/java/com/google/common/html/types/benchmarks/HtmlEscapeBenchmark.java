@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.html.types.benchmarks;
+
+import com.google.common.escape.Escaper;
+import com.google.common.escape.Escapers;
+import com.google.common.html.types.SafeHtml;
+import com.google.common.html.types.SafeHtmls;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the {@code SafeHtmls.htmlEscape*} family, and compares {@link
+ * SafeHtmls#htmlEscape(String)} against the Guava char-map escaper it replaced.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HtmlEscapeBenchmark {
+
+  /** The escaper {@code BuilderUtils.escapeHtmlInternal} used before it was hand-written. */
+  private static final Escaper LEGACY_HTML_ESCAPER =
+      Escapers.builder()
+          .addEscape('"', "&quot;")
+          .addEscape('\'', "&#39;")
+          .addEscape('&', "&amp;")
+          .addEscape('<', "&lt;")
+          .addEscape('>', "&gt;")
+          .build();
+
+  @Param({"CLEAN", "ESCAPE_HEAVY", "MIXED", "MULTILINE"})
+  public Corpus corpus;
+
+  @Param({"16", "1024", "65536"})
+  public int length;
+
+  private String text;
+  private StringBuilder textBuilder;
+  private final StringBuilder out = new StringBuilder();
+
+  @Setup
+  public void setUp() {
+    text = corpus.text(length);
+    textBuilder = new StringBuilder(text);
+  }
+
+  @Benchmark
+  public String legacyEscaper() {
+    return LEGACY_HTML_ESCAPER.escape(text);
+  }
+
+  @Benchmark
+  public SafeHtml htmlEscape() {
+    return SafeHtmls.htmlEscape(text);
+  }
+
+  @Benchmark
+  public SafeHtml htmlEscapeCharSequence() {
+    return SafeHtmls.htmlEscape(textBuilder);
+  }
+
+  /** Streams the escaped text of a StringBuilder into another, without building a SafeHtml. */
+  @Benchmark
+  public int appendHtmlEscaped() throws IOException {
+    out.setLength(0);
+    return SafeHtmls.appendHtmlEscaped(out, textBuilder).length();
+  }
+
+  @Benchmark
+  public SafeHtml htmlEscapePreservingNewlines() {
+    return SafeHtmls.htmlEscapePreservingNewlines(text);
+  }
+
+  @Benchmark
+  public SafeHtml htmlEscapePreservingWhitespace() {
+    return SafeHtmls.htmlEscapePreservingWhitespace(text);
+  }
+
+  @Benchmark
+  public SafeHtml comment() {
+    return SafeHtmls.comment(text);
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.html.types.benchmarks;
+
+import com.google.common.html.types.HtmlEscapeCache;
+import com.google.common.html.types.SafeHtml;
+import com.google.common.html.types.SafeHtmls;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures escaping short labels drawn from a fixed set, as a render path does with user names and
+ * enum display text, directly versus through an {@link HtmlEscapeCache}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HtmlEscapeCacheBenchmark {
+
+  private static final int LABEL_COUNT = 256;
+
+  /** How many distinct labels are escaped, against a cache of {@code LABEL_COUNT} entries. */
+  @Param({"64", "1024"})
+  public int distinctLabels;
+
+  @Param({"CLEAN", "ESCAPE_HEAVY"})
+  public Corpus corpus;
+
+  /**
+   * Whether each label is a fresh String, as if just read from a request or database, so that its
+   * hash code is not cached yet, rather than the same instance, like enum display text.
+   */
+  @Param({"true", "false"})
+  public boolean fresh;
+
+  private final HtmlEscapeCache cache = HtmlEscapeCache.create(LABEL_COUNT, 64);
+  private String[] labels;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    String text = corpus.text(4096);
+    labels = new String[distinctLabels];
+    for (int i = 0; i < distinctLabels; i++) {
+      int start = (i * 7) % (text.length() - 24);
+      labels[i] = (text.substring(start, start + 8 + i % 16) + i);
+    }
+  }
+
+  @Benchmark
+  public SafeHtml htmlEscape() {
+    return SafeHtmls.htmlEscape(nextLabel());
+  }
+
+  @Benchmark
+  public SafeHtml htmlEscapeCached() {
+    return cache.htmlEscape(nextLabel());
+  }
+
+  private String nextLabel() {
+    next = (next + 1) % distinctLabels;
+    return fresh ? new String(labels[next].toCharArray()) : labels[next];
+  }
+}
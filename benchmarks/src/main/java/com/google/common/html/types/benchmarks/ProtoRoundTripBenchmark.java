@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.html.types.benchmarks;
+
+import com.google.common.html.types.SafeHtml;
+import com.google.common.html.types.SafeHtmlProto;
+import com.google.common.html.types.SafeHtmls;
+import com.google.common.html.types.SafeStyle;
+import com.google.common.html.types.SafeStyleBuilder;
+import com.google.common.html.types.SafeStyles;
+import com.google.common.html.types.SafeUrl;
+import com.google.common.html.types.SafeUrls;
+import com.google.common.html.types.TrustedResourceUrl;
+import com.google.common.html.types.TrustedResourceUrlBuilder;
+import com.google.common.html.types.TrustedResourceUrls;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures converting the types to and from their protos, and the full trip through serialized
+ * bytes as done when passing values between servers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProtoRoundTripBenchmark {
+
+  @Param({"16", "1024", "65536"})
+  public int length;
+
+  private SafeHtml html;
+  private byte[] htmlBytes;
+  private SafeUrl url;
+  private SafeStyle style;
+  private TrustedResourceUrl trustedResourceUrl;
+
+  @Setup
+  public void setUp() {
+    html = SafeHtmls.htmlEscape(Corpus.MIXED.text(length));
+    htmlBytes = SafeHtmls.toProto(html).toByteArray();
+    url = SafeUrls.sanitize(UrlCorpus.LONG_HTTPS.url());
+    style = new SafeStyleBuilder().width("100px").color("red").margin("0 auto").build();
+    trustedResourceUrl =
+        new TrustedResourceUrlBuilder("https://www.example.com/static/")
+            .appendEncoded("app.js")
+            .build();
+  }
+
+  @Benchmark
+  public SafeHtml safeHtml() {
+    return SafeHtmls.fromProto(SafeHtmls.toProto(html));
+  }
+
+  @Benchmark
+  public byte[] safeHtmlToBytes() {
+    return SafeHtmls.toProto(html).toByteArray();
+  }
+
+  @Benchmark
+  public SafeHtml safeHtmlFromBytes() throws InvalidProtocolBufferException {
+    return SafeHtmls.fromProto(SafeHtmlProto.parseFrom(htmlBytes));
+  }
+
+  @Benchmark
+  public SafeUrl safeUrl() {
+    return SafeUrls.fromProto(SafeUrls.toProto(url));
+  }
+
+  @Benchmark
+  public SafeStyle safeStyle() {
+    return SafeStyles.fromProto(SafeStyles.toProto(style));
+  }
+
+  @Benchmark
+  public TrustedResourceUrl trustedResourceUrl() {
+    return TrustedResourceUrls.fromProto(TrustedResourceUrls.toProto(trustedResourceUrl));
+  }
+}
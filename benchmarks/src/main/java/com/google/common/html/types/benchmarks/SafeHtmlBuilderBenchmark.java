@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.html.types.benchmarks;
+
+import com.google.common.html.types.SafeHtml;
+import com.google.common.html.types.SafeHtmlBuilder;
+import com.google.common.html.types.SafeHtmls;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link SafeHtmlBuilder#build()} over varying numbers of attributes and children.
+ *
+ * <p>{@code buildToGrowingBuffer} streams the same element into a default-capacity StringBuilder,
+ * which is what {@code build()} did before it precomputed the output length, so the two methods
+ * show the cost of buffer regrowth side by side. Since {@code build()} may return an unflattened
+ * concatenation for large content, each method returns the built string, so that all of them pay
+ * for producing the output. {@code buildReusingBuilder} resets a single builder instead of
+ * allocating a new one for each element. {@code buildEnumAttributes} builds as many attributes as
+ * {@code build}, but sets two of them, when there are any, from enum constants, which are rendered
+ * ahead of time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SafeHtmlBuilderBenchmark {
+
+  @Param({"0", "4", "8"})
+  public int attributeCount;
+
+  @Param({"0", "8", "64"})
+  public int childCount;
+
+  @Param({"CLEAN", "ESCAPE_HEAVY"})
+  public Corpus corpus;
+
+  private String attributeValue;
+  private List<SafeHtml> children;
+  private final SafeHtmlBuilder reusedBuilder = new SafeHtmlBuilder("div");
+
+  @Setup
+  public void setUp() {
+    attributeValue = corpus.text(32);
+    children = new ArrayList<>();
+    for (int i = 0; i < childCount; i++) {
+      children.add(SafeHtmls.htmlEscape(corpus.text(64)));
+    }
+  }
+
+  @Benchmark
+  public String build() {
+    return newBuilder().build().getSafeHtmlString();
+  }
+
+  @Benchmark
+  public String buildToGrowingBuffer() throws IOException {
+    return newBuilder().buildTo(new StringBuilder()).toString();
+  }
+
+  @Benchmark
+  public String buildReusingBuilder() {
+    SafeHtmlBuilder builder = reusedBuilder.reset();
+    setAttributes(builder, attributeCount, attributeValue);
+    return builder.appendContent(children).build().getSafeHtmlString();
+  }
+
+  @Benchmark
+  public String buildEnumAttributes() {
+    SafeHtmlBuilder builder = new SafeHtmlBuilder("div");
+    if (attributeCount > 0) {
+      builder.setDir(SafeHtmlBuilder.DirValue.LTR).setTarget(SafeHtmlBuilder.TargetValue.BLANK);
+      setAttributes(builder, attributeCount - 2, attributeValue);
+    }
+    return builder.appendContent(children).build().getSafeHtmlString();
+  }
+
+  private SafeHtmlBuilder newBuilder() {
+    SafeHtmlBuilder builder = new SafeHtmlBuilder("div");
+    setAttributes(builder, attributeCount, attributeValue);
+    return builder.appendContent(children);
+  }
+
+  /** Sets the first {@code count} of a fixed list of attributes on {@code builder}. */
+  static void setAttributes(SafeHtmlBuilder builder, int count, String value) {
+    switch (count) {
+      case 8:
+        builder.setWidth(value);
+        // fall through
+      case 7:
+        builder.setValue(value);
+        // fall through
+      case 6:
+        builder.setType(value);
+        // fall through
+      case 5:
+        builder.setTranslate(value);
+        // fall through
+      case 4:
+        builder.setHeight(value);
+        // fall through
+      case 3:
+        builder.setLang(value);
+        // fall through
+      case 2:
+        builder.setAlign(value);
+        // fall through
+      case 1:
+        builder.setTitle(value);
+        // fall through
+      case 0:
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported attribute count " + count);
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.html.types.benchmarks;
+
+import com.google.common.html.types.SafeHtml;
+import com.google.common.html.types.SafeHtmlBytes;
+import com.google.common.html.types.SafeHtmls;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures writing a cached SafeHtml to a byte stream, encoding its string on every write versus
+ * writing the {@link SafeHtmlBytes} encoded once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SafeHtmlBytesBenchmark {
+
+  @Param({"256", "16384"})
+  public int length;
+
+  @Param({"CLEAN", "MIXED"})
+  public Corpus corpus;
+
+  private SafeHtml html;
+  private SafeHtmlBytes bytes;
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+  @Setup
+  public void setUp() {
+    html = SafeHtmls.htmlEscape(corpus.text(length));
+    bytes = SafeHtmls.toUtf8Bytes(html);
+  }
+
+  @Benchmark
+  public int writeEncodingEachTime() throws IOException {
+    out.reset();
+    out.write(html.getSafeHtmlString().getBytes(StandardCharsets.UTF_8));
+    return out.size();
+  }
+
+  @Benchmark
+  public int writePreEncoded() throws IOException {
+    out.reset();
+    bytes.writeTo(out);
+    return out.size();
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.html.types.benchmarks;
+
+import com.google.common.html.types.SafeStyle;
+import com.google.common.html.types.SafeStyleBuilder;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link SafeStyleBuilder#build()} over plain values, functions and URLs, with a new
+ * builder for each style or a single builder that is reset between styles.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SafeStyleBuilderBenchmark {
+
+  private final SafeStyleBuilder reusedBuilder = new SafeStyleBuilder();
+
+  @Benchmark
+  public SafeStyle buildPlainValues() {
+    return new SafeStyleBuilder()
+        .width("100px")
+        .height("50%")
+        .margin("0 auto")
+        .padding("4px 8px")
+        .color("red")
+        .display("inline-block")
+        .build();
+  }
+
+  @Benchmark
+  public SafeStyle buildPlainValuesReusingBuilder() {
+    return reusedBuilder
+        .reset()
+        .width("100px")
+        .height("50%")
+        .margin("0 auto")
+        .padding("4px 8px")
+        .color("red")
+        .display("inline-block")
+        .build();
+  }
+
+  @Benchmark
+  public SafeStyle buildFunctionCalls() {
+    return new SafeStyleBuilder()
+        .backgroundColor("rgba(10, 20, 30, 0.5)")
+        .color("rgb(255, 255, 255)")
+        .border("1px solid #ccc")
+        .build();
+  }
+
+  @Benchmark
+  public SafeStyle buildBackgroundImageUrl() {
+    return new SafeStyleBuilder().backgroundImageAppendUrl(UrlCorpus.LONG_HTTPS.url()).build();
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.html.types.benchmarks;
+
+import com.google.common.html.types.CustomSafeUrlScheme;
+import com.google.common.html.types.SafeUrl;
+import com.google.common.html.types.SafeUrlPolicy;
+import com.google.common.html.types.SafeUrls;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link SafeUrls#sanitize(String)} over short, long and rejected URLs, with and without
+ * custom schemes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SafeUrlsBenchmark {
+
+  private static final Set<CustomSafeUrlScheme> CUSTOM_SCHEMES =
+      EnumSet.of(CustomSafeUrlScheme.TEL, CustomSafeUrlScheme.SMS, CustomSafeUrlScheme.GEO);
+
+  private static final SafeUrlPolicy POLICY = SafeUrlPolicy.create(CUSTOM_SCHEMES);
+
+  @Param({"SHORT_RELATIVE", "LONG_HTTPS", "JAVASCRIPT", "DATA_IMAGE"})
+  public UrlCorpus urlCorpus;
+
+  private String url;
+
+  @Setup
+  public void setUp() {
+    url = urlCorpus.url();
+  }
+
+  @Benchmark
+  public SafeUrl sanitize() {
+    return SafeUrls.sanitize(url);
+  }
+
+  @Benchmark
+  public String sanitizeAsString() {
+    return SafeUrls.sanitizeAsString(url, "benchmark");
+  }
+
+  @Benchmark
+  public SafeUrl sanitizeWithCustomSchemes() {
+    return SafeUrls.sanitize(url, CUSTOM_SCHEMES);
+  }
+
+  @Benchmark
+  public SafeUrl policySanitize() {
+    return POLICY.sanitize(url);
+  }
+}
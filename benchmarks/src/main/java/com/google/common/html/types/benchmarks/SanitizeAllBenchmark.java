@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.html.types.benchmarks;
+
+import com.google.common.html.types.SafeUrl;
+import com.google.common.html.types.SafeUrls;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares sanitizing a batch of links with {@link SafeUrls#sanitizeAll(List)} against calling
+ * {@link SafeUrls#sanitize(String)} in a loop.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SanitizeAllBenchmark {
+
+  @Param({"100", "10000", "100000"})
+  public int batchSize;
+
+  private List<String> urls;
+
+  @Setup
+  public void setUp() {
+    UrlCorpus[] corpora = {UrlCorpus.SHORT_RELATIVE, UrlCorpus.LONG_HTTPS, UrlCorpus.JAVASCRIPT};
+    urls = new ArrayList<>(batchSize);
+    for (int i = 0; i < batchSize; i++) {
+      urls.add(corpora[i % corpora.length].url());
+    }
+  }
+
+  @Benchmark
+  public List<SafeUrl> sanitizeInLoop() {
+    List<SafeUrl> sanitized = new ArrayList<>(urls.size());
+    for (String url : urls) {
+      sanitized.add(SafeUrls.sanitize(url));
+    }
+    return sanitized;
+  }
+
+  @Benchmark
+  public List<SafeUrl> sanitizeAll() {
+    return SafeUrls.sanitizeAll(urls);
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.html.types.benchmarks;
+
+import com.google.common.html.types.SafeHtml;
+import com.google.common.html.types.SafeHtmls;
+import com.google.common.html.types.SpliceableSafeHtml;
+import com.google.common.html.types.SpliceableSafeHtml.Segment;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures splicing a template with {@link SpliceableSafeHtml#spliceAll(Map)} against rendering
+ * the same template once compiled with {@link SpliceableSafeHtml#compile()}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpliceableSafeHtmlBenchmark {
+
+  @Param({"1", "8", "64"})
+  public int placeholderCount;
+
+  @Param({"CLEAN", "ESCAPE_HEAVY"})
+  public Corpus corpus;
+
+  private SpliceableSafeHtml template;
+  private SpliceableSafeHtml.Compiled compiled;
+  private Map<String, SafeHtml> substitutions;
+  private SafeHtml[] slots;
+
+  @Setup
+  public void setUp() {
+    SafeHtml staticHtml = SafeHtmls.htmlEscape(corpus.text(64));
+    List<Segment> segments = new ArrayList<>();
+    substitutions = new HashMap<>();
+    for (int i = 0; i < placeholderCount; i++) {
+      String label = "slot" + i;
+      segments.add(Segment.fromSafeHtml(staticHtml));
+      segments.add(Segment.fromPlaceholderLabel(label));
+      substitutions.put(label, SafeHtmls.htmlEscape(corpus.text(16)));
+    }
+    segments.add(Segment.fromSafeHtml(staticHtml));
+    template = new SpliceableSafeHtml(segments);
+    compiled = template.compile();
+    slots = new SafeHtml[placeholderCount];
+    for (Map.Entry<String, SafeHtml> entry : substitutions.entrySet()) {
+      slots[compiled.getSlot(entry.getKey())] = entry.getValue();
+    }
+  }
+
+  @Benchmark
+  public SafeHtml spliceAll() {
+    return template.spliceAll(substitutions);
+  }
+
+  @Benchmark
+  public SafeHtml compiledRender() {
+    return compiled.render(slots);
+  }
+
+  @Benchmark
+  public SpliceableSafeHtml.Compiled compile() {
+    return template.compile();
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.html.types.benchmarks;
+
+import com.google.common.html.types.TrustedResourceUrl;
+import com.google.common.html.types.TrustedResourceUrlBuilder;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures {@link TrustedResourceUrlBuilder} with growing numbers of appended parts. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TrustedResourceUrlBuilderBenchmark {
+
+  @Param({"1", "8", "64"})
+  public int partCount;
+
+  @Param({"CLEAN", "ESCAPE_HEAVY"})
+  public Corpus corpus;
+
+  private String part;
+
+  @Setup
+  public void setUp() {
+    part = corpus.text(24);
+  }
+
+  @Benchmark
+  public TrustedResourceUrl appendEncoded() {
+    TrustedResourceUrlBuilder builder =
+        new TrustedResourceUrlBuilder("https://www.example.com/static/");
+    for (int i = 0; i < partCount; i++) {
+      builder.appendEncoded(part).append("/");
+    }
+    return builder.build();
+  }
+
+  @Benchmark
+  public TrustedResourceUrl appendQueryParam() {
+    TrustedResourceUrlBuilder builder =
+        new TrustedResourceUrlBuilder("https://www.example.com/static/app.js");
+    for (int i = 0; i < partCount; i++) {
+      builder.appendQueryParam("p", part);
+    }
+    return builder.build();
+  }
+}
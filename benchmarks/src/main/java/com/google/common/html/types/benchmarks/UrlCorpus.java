@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.html.types.benchmarks;
+
+/** URL corpora shared by the benchmarks, selectable as a JMH {@code @Param}. */
+public enum UrlCorpus {
+  /** A short relative link, the most common URL in rendered pages. */
+  SHORT_RELATIVE("/search?q=kittens"),
+
+  /** A long absolute https URL with a deep path and many query parameters. */
+  LONG_HTTPS(longHttpsUrl()),
+
+  /** A javascript: URL, which sanitization rejects. */
+  JAVASCRIPT("javascript:alert(document.cookie)"),
+
+  /** A base64-encoded image data: URL of about 16 KiB. */
+  DATA_IMAGE("data:image/png;base64," + base64Payload(16 * 1024));
+
+  private final String url;
+
+  private UrlCorpus(String url) {
+    this.url = url;
+  }
+
+  public String url() {
+    return url;
+  }
+
+  private static String longHttpsUrl() {
+    StringBuilder sb = new StringBuilder("https://www.example.com");
+    for (int i = 0; i < 8; i++) {
+      sb.append("/segment-").append(i);
+    }
+    char separator = '?';
+    for (int i = 0; i < 24; i++) {
+      sb.append(separator).append("param").append(i).append("=value%20").append(i);
+      separator = '&';
+    }
+    return sb.append("#fragment").toString();
+  }
+
+  private static String base64Payload(int length) {
+    String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    StringBuilder sb = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      sb.append(alphabet.charAt((i * 7) % alphabet.length()));
+    }
+    return sb.toString();
+  }
+}
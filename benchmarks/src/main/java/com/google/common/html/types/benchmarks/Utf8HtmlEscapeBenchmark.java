@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.html.types.benchmarks;
+
+import com.google.common.html.types.SafeHtmls;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures HTML-escaping a UTF-8 payload into a byte stream, decoding it, escaping the String and
+ * encoding the result versus escaping the bytes directly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class Utf8HtmlEscapeBenchmark {
+
+  @Param({"256", "16384"})
+  public int length;
+
+  @Param({"CLEAN", "ESCAPE_HEAVY", "MIXED"})
+  public Corpus corpus;
+
+  private byte[] utf8;
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+  @Setup
+  public void setUp() {
+    utf8 = corpus.text(length).getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public int writeDecodingAndEncoding() throws IOException {
+    out.reset();
+    String text = new String(utf8, StandardCharsets.UTF_8);
+    out.write(SafeHtmls.htmlEscape(text).getSafeHtmlString().getBytes(StandardCharsets.UTF_8));
+    return out.size();
+  }
+
+  @Benchmark
+  public int writeEscapedBytes() throws IOException {
+    out.reset();
+    SafeHtmls.htmlEscapeUtf8(utf8).writeTo(out);
+    return out.size();
+  }
+
+  @Benchmark
+  public int writeEscapedBytesStreaming() throws IOException {
+    out.reset();
+    SafeHtmls.writeHtmlEscapedUtf8(out, utf8, 0, utf8.length);
+    return out.size();
+  }
+}
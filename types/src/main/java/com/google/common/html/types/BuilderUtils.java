@@ -17,9 +17,8 @@
 package com.google.common.html.types;
 
 import com.google.common.annotations.GwtCompatible;
-import com.google.common.escape.Escaper;
-import com.google.common.escape.Escapers;
 import com.google.errorprone.annotations.CheckReturnValue;
+import java.io.IOException;
 
 /**
  * Static utility methods shared by safe-HTML types' factory and builder classes, such as {@link
@@ -31,28 +30,322 @@ final class BuilderUtils {
 
   private BuilderUtils() {}
 
-  static String coerceToInterchangeValid(String text) {
-    // MOE elided code that uses a non-public library to make sure text only
-    // contains minimally-encoded Unicode scalar values that can appear in
-    // both HTML and XML.
-    return text;
+  /** Replaces chars and code points that cannot appear in both HTML and XML. */
+  private static final String REPLACEMENT_CHARACTER = "\ufffd";
 
+  /**
+   * HTML-escapes {@code s}, replacing each of {@code "'&<>} with a character reference, and coerces
+   * it to interchange-valid text at the same time. See {@link #replacementAt} for what coercion
+   * replaces.
+   *
+   * <p>For valid text, this is exactly what j.c.g.common.html.HtmlEscapers.htmlEscaper() does.
+   * However, depending on j.c.g.common.html is problematic because it has no android target,
+   * substantial internal only code, and it pulls a lot of other dependencies with it.
+   *
+   * <p>Most text passed through here needs no escaping at all, so the common case is a single scan
+   * that returns {@code s} itself. Otherwise the output is written in one pass into a buffer sized
+   * exactly to the escaped length.
+   */
+  static String escapeHtmlInternal(String s) {
+    int length = s.length();
+    int firstEscape = 0;
+    while (firstEscape < length && replacementAt(s, firstEscape) == null) {
+      firstEscape++;
+    }
+    if (firstEscape == length) {
+      return s;
+    }
+
+    int escapedLength = length;
+    for (int i = firstEscape; i < length; i++) {
+      String replacement = replacementAt(s, i);
+      if (replacement != null) {
+        escapedLength += replacement.length() - 1;
+      }
+    }
+
+    char[] out = new char[escapedLength];
+    s.getChars(0, firstEscape, out, 0);
+    int outPos = firstEscape;
+    for (int i = firstEscape; i < length; i++) {
+      String replacement = replacementAt(s, i);
+      if (replacement == null) {
+        out[outPos++] = s.charAt(i);
+      } else {
+        replacement.getChars(0, replacement.length(), out, outPos);
+        outPos += replacement.length();
+      }
+    }
+    return new String(out);
   }
 
-  static String escapeHtmlInternal(String s) {
-    return HTML_ESCAPER.escape(s);
-  }
-
-  // This is exactly what j.c.g.common.html.HtmlEscapers.htmlEscaper() does. However, depending on
-  // j.c.g.common.html is problematic because it has no android target, substantial internal only
-  // code, and it pulls a lot of other dependencies with it.
-  private static final Escaper HTML_ESCAPER =
-      Escapers.builder()
-          .addEscape('"', "&quot;")
-          // Note: "&apos;" is not defined in HTML 4.01.
-          .addEscape('\'', "&#39;")
-          .addEscape('&', "&amp;")
-          .addEscape('<', "&lt;")
-          .addEscape('>', "&gt;")
-          .build();
+  /**
+   * HTML-escapes {@code s} as {@link #escapeHtmlInternal(String)} does, reading its chars in place
+   * rather than from a copy. If nothing needs escaping, the result is {@code s.toString()}, the
+   * only copy made. Otherwise the output is written in one pass into a buffer sized exactly to the
+   * escaped length.
+   *
+   * <p>This duplicates the String overload rather than replacing it, so that escaping Strings, by
+   * far the common case, keeps calling String.charAt directly instead of through CharSequence.
+   */
+  static String escapeHtmlInternal(CharSequence s) {
+    int length = s.length();
+    int firstEscape = 0;
+    while (firstEscape < length && replacementAt(s, firstEscape) == null) {
+      firstEscape++;
+    }
+    if (firstEscape == length) {
+      return s.toString();
+    }
+
+    int escapedLength = length;
+    for (int i = firstEscape; i < length; i++) {
+      String replacement = replacementAt(s, i);
+      if (replacement != null) {
+        escapedLength += replacement.length() - 1;
+      }
+    }
+
+    char[] out = new char[escapedLength];
+    for (int i = 0; i < firstEscape; i++) {
+      out[i] = s.charAt(i);
+    }
+    int outPos = firstEscape;
+    for (int i = firstEscape; i < length; i++) {
+      String replacement = replacementAt(s, i);
+      if (replacement == null) {
+        out[outPos++] = s.charAt(i);
+      } else {
+        replacement.getChars(0, replacement.length(), out, outPos);
+        outPos += replacement.length();
+      }
+    }
+    return new String(out);
+  }
+
+  /**
+   * HTML-escapes the {@code length} chars of {@code chars} starting at {@code offset}, as {@link
+   * #escapeHtmlInternal(CharSequence)} does. Chars outside the range are not read, so a surrogate
+   * at either end of it is unpaired. The caller checks the range.
+   */
+  static String escapeHtmlInternal(char[] chars, int offset, int length) {
+    return escapeHtmlInternal(new CharArrayRange(chars, offset, length));
+  }
+
+  /**
+   * Returns the length of {@code escapeHtmlInternal(s)} without building the escaped string, so
+   * that callers can size their output buffers exactly.
+   */
+  static int escapedHtmlLength(String s) {
+    int length = s.length();
+    int escapedLength = length;
+    for (int i = 0; i < length; i++) {
+      String replacement = replacementAt(s, i);
+      if (replacement != null) {
+        escapedLength += replacement.length() - 1;
+      }
+    }
+    return escapedLength;
+  }
+
+  /**
+   * Appends the HTML-escaped form of {@code s} to {@code out}, as {@link #escapeHtmlInternal} would
+   * produce it, without building the escaped string first. Runs of characters that need no escaping
+   * are appended as ranges of {@code s}.
+   */
+  static void appendEscapedHtml(Appendable out, CharSequence s) throws IOException {
+    int length = s.length();
+    int unescapedStart = 0;
+    for (int i = 0; i < length; i++) {
+      String replacement = replacementAt(s, i);
+      if (replacement != null) {
+        if (unescapedStart < i) {
+          out.append(s, unescapedStart, i);
+        }
+        out.append(replacement);
+        unescapedStart = i + 1;
+      }
+    }
+    if (unescapedStart == 0) {
+      out.append(s);
+    } else if (unescapedStart < length) {
+      out.append(s, unescapedStart, length);
+    }
+  }
+
+  /**
+   * HTML-escapes {@code s} in a single pass, replacing each line terminator ({@code \r\n}, {@code
+   * \n} or {@code \r}) with {@code <br>}.
+   *
+   * <p>If {@code preserveSpacesAndTabs} is set, a space at the start of {@code s} or following
+   * whitespace also becomes {@code &#160;}, and each run of tabs is wrapped in a {@code
+   * white-space:pre} span. A space turned into {@code &#160;} does not count as preceding
+   * whitespace for the next space, so runs of spaces alternate between the two. This is exactly
+   * the output of the regular expression replacements these methods used to chain. Other chars are
+   * escaped and coerced as by {@link #escapeHtmlInternal}.
+   */
+  static String escapeHtmlPreservingWhitespace(String s, boolean preserveSpacesAndTabs) {
+    int length = s.length();
+    StringBuilder out = new StringBuilder(length + 16);
+    // The start of the text counts as whitespace, so that a leading space is preserved.
+    boolean afterWhitespace = true;
+    for (int i = 0; i < length; i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '\r':
+          if (i + 1 < length && s.charAt(i + 1) == '\n') {
+            i++;
+          }
+          out.append("<br>");
+          afterWhitespace = true;
+          break;
+        case '\n':
+          out.append("<br>");
+          afterWhitespace = true;
+          break;
+        case ' ':
+          if (preserveSpacesAndTabs && afterWhitespace) {
+            out.append("&#160;");
+            afterWhitespace = false;
+          } else {
+            out.append(' ');
+            afterWhitespace = true;
+          }
+          break;
+        case '\t':
+          if (preserveSpacesAndTabs) {
+            int runEnd = i + 1;
+            while (runEnd < length && s.charAt(runEnd) == '\t') {
+              runEnd++;
+            }
+            out.append("<span style=\"white-space:pre\">").append(s, i, runEnd).append("</span>");
+            i = runEnd - 1;
+          } else {
+            out.append('\t');
+          }
+          afterWhitespace = true;
+          break;
+        default:
+          String replacement = replacementAt(s, i);
+          if (replacement == null) {
+            out.append(c);
+          } else {
+            out.append(replacement);
+          }
+          afterWhitespace = false;
+      }
+    }
+    return out.toString();
+  }
+
+  /**
+   * What each char below U+00A0 is replaced with, or null if it is kept: a character reference for
+   * each of {@code "'&<>}, and U+FFFD for C0 controls other than tab, line feed and carriage
+   * return, DEL and C1 controls.
+   */
+  private static final String[] LATIN1_REPLACEMENTS = new String['\u00a0'];
+
+  static {
+    for (char c = 0; c < ' '; c++) {
+      if (c != '\t' && c != '\n' && c != '\r') {
+        LATIN1_REPLACEMENTS[c] = REPLACEMENT_CHARACTER;
+      }
+    }
+    for (char c = '\u007f'; c < '\u00a0'; c++) {
+      LATIN1_REPLACEMENTS[c] = REPLACEMENT_CHARACTER;
+    }
+    LATIN1_REPLACEMENTS['"'] = "&quot;";
+    // Note: "&apos;" is not defined in HTML 4.01.
+    LATIN1_REPLACEMENTS['\''] = "&#39;";
+    LATIN1_REPLACEMENTS['&'] = "&amp;";
+    LATIN1_REPLACEMENTS['<'] = "&lt;";
+    LATIN1_REPLACEMENTS['>'] = "&gt;";
+  }
+
+  /**
+   * Returns what the char at {@code i} of {@code s} must be replaced with, or null if it is kept as
+   * is. Each of {@code "'&<>} becomes a character reference. Chars that are not interchange-valid,
+   * i.e. that cannot appear in both HTML and XML, become U+FFFD. Those are C0 controls other than
+   * tab, line feed and carriage return, DEL and C1 controls, unpaired surrogates, and
+   * noncharacters. A supplementary noncharacter is replaced by a single U+FFFD, carried by its high
+   * surrogate.
+   *
+   * <p>The escaping loops call this for one char at a time. Vectorizing the scan would need the
+   * incubating Vector API, which this Java 7 and GWT code cannot depend on.
+   */
+  private static String replacementAt(CharSequence s, int i) {
+    char c = s.charAt(i);
+    if (c < '\u00a0') {
+      return LATIN1_REPLACEMENTS[c];
+    }
+    if (c < Character.MIN_SURROGATE) {
+      return null;
+    }
+    return nonLatin1ReplacementAt(s, i, c);
+  }
+
+  /** The rarer cases of {@link #replacementAt}, for chars from the surrogates up. */
+  private static String nonLatin1ReplacementAt(CharSequence s, int i, char c) {
+    // A supplementary code point is a noncharacter iff the low ten bits of both of its surrogates,
+    // but for the lowest bit of the low surrogate, are all set.
+    if (c < Character.MIN_LOW_SURROGATE) {
+      if (i + 1 < s.length()) {
+        char low = s.charAt(i + 1);
+        if (Character.isLowSurrogate(low)) {
+          return (low & 0x3fe) == 0x3fe && (c & 0x3f) == 0x3f ? REPLACEMENT_CHARACTER : null;
+        }
+      }
+      return REPLACEMENT_CHARACTER;
+    }
+    if (c <= Character.MAX_LOW_SURROGATE) {
+      if (i > 0) {
+        char high = s.charAt(i - 1);
+        if (Character.isHighSurrogate(high)) {
+          // The high surrogate of a noncharacter already carries its replacement.
+          return (c & 0x3fe) == 0x3fe && (high & 0x3f) == 0x3f ? "" : null;
+        }
+      }
+      return REPLACEMENT_CHARACTER;
+    }
+    return (c >= '\ufdd0' && c <= '\ufdef') || c >= '\ufffe' ? REPLACEMENT_CHARACTER : null;
+  }
+
+  /** A range of a char array, read in place. */
+  private static final class CharArrayRange implements CharSequence {
+    private final char[] chars;
+    private final int offset;
+    private final int length;
+
+    CharArrayRange(char[] chars, int offset, int length) {
+      this.chars = chars;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    @Override
+    public int length() {
+      return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+      if (index < 0 || index >= length) {
+        throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+      }
+      return chars[offset + index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      if (start < 0 || start > end || end > length) {
+        throw new IndexOutOfBoundsException("[" + start + ", " + end + "), length " + length);
+      }
+      return new CharArrayRange(chars, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+      return new String(chars, offset, length);
+    }
+  }
 }
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.html.types;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.errorprone.annotations.CheckReturnValue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded cache of {@link SafeHtmls#htmlEscape(String)} results, for short strings that are
+ * escaped over and over, such as user names, labels and enum display text. A hit returns the same
+ * SafeHtml as before, without escaping the text or allocating a new SafeHtml.
+ *
+ * <p>A cache should be created once and shared, for instance in a static field. It is thread-safe
+ * and lock-free. Text longer than the cache's maximum length bypasses it. To escape content for a
+ * {@link SafeHtmlBuilder}, pass the cached result to {@link SafeHtmlBuilder#appendContent}.
+ *
+ * <p>A miss costs more than escaping without the cache, so a cache only pays off when most lookups
+ * hit: size it for the set of strings that recur, and watch {@link #hitCount} and {@link
+ * #missCount}.
+ *
+ * <pre>{@code
+ * private static final HtmlEscapeCache LABELS = HtmlEscapeCache.create(1024, 64);
+ * ...
+ * new SafeHtmlBuilder("span").appendContent(LABELS.htmlEscape(label)).build();
+ * }</pre>
+ *
+ * <p>Entries are kept in sets of four slots chosen by the text's hash code, and each set is evicted
+ * with the CLOCK algorithm: a new entry takes an empty slot if there is one. Otherwise the set's
+ * hand advances from where it last stopped, clearing the referenced bits of the entries it passes,
+ * until it finds an entry not used since it last passed, which the new entry replaces. Threads that
+ * race on a set may overwrite each other's entries or hand positions; that costs a later miss,
+ * never a wrong result.
+ *
+ * <p>The hit and miss counts are striped per thread, so that counting does not make threads on
+ * different cores contend for one memory location.
+ */
+@CheckReturnValue
+@GwtIncompatible("AtomicReferenceArray")
+public final class HtmlEscapeCache {
+
+  private static final int WAYS = 4;
+
+  /**
+   * The number of counter stripes: the number of processors rounded up to a power of two, so that
+   * threads on different cores mostly update different stripes.
+   */
+  private static final int STRIPES =
+      Math.max(1, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() - 1) << 1);
+
+  /**
+   * The distance between stripes in {@link #counts}: a stripe's hit and miss counts share a
+   * 64-byte cache line, which no other stripe touches.
+   */
+  private static final int STRIPE_SPACING = 8;
+
+  private static final int HIT = 0;
+  private static final int MISS = 1;
+
+  private final int maxLength;
+  private final int setMask;
+  private final AtomicReferenceArray<Entry> entries;
+
+  /** The CLOCK hand of each set: the way at which its next sweep starts. */
+  private final AtomicIntegerArray hands;
+
+  /** The hit and miss counts of each stripe, {@link #STRIPE_SPACING} longs apart. */
+  private final AtomicLongArray counts = new AtomicLongArray(STRIPES * STRIPE_SPACING);
+
+  private HtmlEscapeCache(int capacity, int maxLength) {
+    this.maxLength = maxLength;
+    this.setMask = capacity / WAYS - 1;
+    this.entries = new AtomicReferenceArray<Entry>(capacity);
+    this.hands = new AtomicIntegerArray(capacity / WAYS);
+  }
+
+  /**
+   * Creates a cache that holds up to {@code maxEntries} results, rounded up to a power of two, of
+   * escaping text of at most {@code maxLength} chars.
+   *
+   * @throws IllegalArgumentException if {@code maxEntries} or {@code maxLength} is not positive, or
+   *     {@code maxEntries} is above 2<sup>30</sup>
+   */
+  public static HtmlEscapeCache create(int maxEntries, int maxLength) {
+    if (maxEntries <= 0 || maxEntries > 1 << 30) {
+      throw new IllegalArgumentException("maxEntries out of range: " + maxEntries);
+    }
+    if (maxLength <= 0) {
+      throw new IllegalArgumentException("maxLength must be positive: " + maxLength);
+    }
+    int capacity = Math.max(WAYS, Integer.highestOneBit(maxEntries - 1) << 1);
+    return new HtmlEscapeCache(capacity, maxLength);
+  }
+
+  /**
+   * Returns {@link SafeHtmls#htmlEscape(String) SafeHtmls.htmlEscape(text)}, from the cache if it
+   * holds it.
+   */
+  public SafeHtml htmlEscape(String text) {
+    if (text.length() > maxLength) {
+      return SafeHtmls.htmlEscape(text);
+    }
+    int hash = text.hashCode();
+    // Sequential keys, like "user1" and "user2", have hash codes that differ in their low bits
+    // only. Multiplying spreads those bits, so that such keys spread over the sets.
+    int mixed = hash * 0x9e3779b9;
+    int set = (mixed ^ (mixed >>> 16)) & setMask;
+    int first = set * WAYS;
+    for (int i = first; i < first + WAYS; i++) {
+      Entry entry = entries.get(i);
+      if (entry != null && entry.hash == hash && entry.text.equals(text)) {
+        // Only write the bit when it changes, so that hits on a hot entry do not keep
+        // invalidating its cache line on other cores.
+        if (!entry.referenced) {
+          entry.referenced = true;
+        }
+        count(HIT);
+        return entry.html;
+      }
+    }
+    count(MISS);
+    SafeHtml html = SafeHtmls.htmlEscape(text);
+    entries.set(victim(set), new Entry(text, hash, html));
+    return html;
+  }
+
+  private void count(int counter) {
+    int stripe = System.identityHashCode(Thread.currentThread()) & (STRIPES - 1);
+    counts.incrementAndGet(stripe * STRIPE_SPACING + counter);
+  }
+
+  private long sum(int counter) {
+    long sum = 0;
+    for (int stripe = 0; stripe < STRIPES; stripe++) {
+      sum += counts.get(stripe * STRIPE_SPACING + counter);
+    }
+    return sum;
+  }
+
+  /**
+   * Returns the slot of {@code set} to store a new entry in: an empty one if there is one, else the
+   * first one the set's CLOCK hand reaches that was not referenced since the hand last passed it.
+   * The hand clears the referenced bits it passes, so it stops within one revolution.
+   */
+  private int victim(int set) {
+    int first = set * WAYS;
+    for (int i = first; i < first + WAYS; i++) {
+      if (entries.get(i) == null) {
+        return i;
+      }
+    }
+    int hand = hands.get(set);
+    // One revolution clears every bit, so the hand stops by the slot it started at, unless
+    // concurrent hits set bits again behind it.
+    for (int step = 0; step < WAYS; step++) {
+      Entry entry = entries.get(first + hand);
+      if (entry == null || !entry.referenced) {
+        break;
+      }
+      entry.referenced = false;
+      hand = (hand + 1) & (WAYS - 1);
+    }
+    hands.set(set, (hand + 1) & (WAYS - 1));
+    return first + hand;
+  }
+
+  /** Returns the number of times {@link #htmlEscape} returned a cached result. */
+  public long hitCount() {
+    return sum(HIT);
+  }
+
+  /**
+   * Returns the number of times {@link #htmlEscape} escaped text that was short enough to be cached
+   * but was not. Text too long to be cached counts as neither a hit nor a miss.
+   */
+  public long missCount() {
+    return sum(MISS);
+  }
+
+  /** Removes all cached results. The hit and miss counts are kept. */
+  public void clear() {
+    for (int i = 0; i < entries.length(); i++) {
+      entries.set(i, null);
+    }
+  }
+
+  private static final class Entry {
+    final String text;
+    final int hash;
+    final SafeHtml html;
+
+    /**
+     * Whether the entry was used since its set's CLOCK hand last passed it. Hits set it and sweeps
+     * clear it without synchronizing with each other. The race is benign: a lost update only makes
+     * eviction slightly less accurate.
+     */
+    volatile boolean referenced;
+
+    Entry(String text, int hash, SafeHtml html) {
+      this.text = text;
+      this.hash = hash;
+      this.html = html;
+    }
+  }
+}
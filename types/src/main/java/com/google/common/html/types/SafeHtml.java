@@ -17,6 +17,9 @@
 package com.google.common.html.types;
 
 import com.google.errorprone.annotations.CheckReturnValue;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 import jsinterop.annotations.JsType;
@@ -30,6 +33,14 @@ import jsinterop.annotations.JsType;
  * <p>Values of this type are guaranteed to be safe to use in HTML contexts, such as, assignment to
  * the innerHTML DOM property, or interpolation into a HTML template in HTML PC_DATA context, in the
  * sense that the use will not result in a Cross-Site-Scripting vulnerability.
+ *
+ * <p>Instances are immutable in value, but not all of them in representation. A SafeHtml either
+ * wraps a string in its final wrapped-value field, or is a concatenation of other SafeHtmls, for
+ * which that field is null. A concatenation publishes its string lazily through its two volatile
+ * fields: {@code flattened} is set the first time the string is needed, and only then is {@code
+ * parts} cleared. Every thread thus sees either the parts or the flattened string, which have the
+ * same value. The wrapped-value field must only be read through {@link #getSafeHtmlString} or the
+ * private tree walkers, which handle both cases.
  */
 @CheckReturnValue
 @Immutable
@@ -45,18 +56,57 @@ public final class SafeHtml {
   /** The SafeHtml wrapping the HTML doctype. */
   public static final SafeHtml DOCTYPE = new SafeHtml("<!DOCTYPE html>");
 
-  private final String privateDoNotAccessOrElseSafeHtmlWrappedValue;
+  /** The wrapped string, or null if this SafeHtml is a concatenation. */
+  @Nullable private final String privateDoNotAccessOrElseSafeHtmlWrappedValue;
+
+  /**
+   * The values whose concatenation this SafeHtml represents, or null if it wraps a string or has
+   * been flattened. Concatenating SafeHtmls this way is O(number of parts) rather than O(length),
+   * which keeps assembling deeply nested pages linear in their size.
+   *
+   * <p>The parts are dropped once {@link #flattened} is set, so that building a page with {@code
+   * html = concat(html, more)} and reading it between steps does not keep every intermediate
+   * string reachable from the last one.
+   */
+  @Nullable private volatile SafeHtml[] parts;
+
+  /**
+   * The concatenation of the parts, computed on the first call to getSafeHtmlString(). It is set
+   * before {@link #parts} is cleared, so a concatenation without parts always has it.
+   */
+  @Nullable private volatile String flattened;
+
+  /** The length of the underlying string, known even before {@link #parts} are flattened. */
+  private final int length;
 
   SafeHtml(String html) {
     if (html == null) {
       throw new NullPointerException();
     }
     this.privateDoNotAccessOrElseSafeHtmlWrappedValue = html;
+    this.length = html.length();
+  }
+
+  /**
+   * Creates a SafeHtml that is the concatenation of {@code parts}, without copying their contents.
+   * The array is retained and must not be modified afterwards.
+   */
+  SafeHtml(SafeHtml[] parts) {
+    long length = 0;
+    for (SafeHtml part : parts) {
+      length += part.length;
+    }
+    if (length > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Concatenated SafeHtml is too long: " + length);
+    }
+    this.privateDoNotAccessOrElseSafeHtmlWrappedValue = null;
+    this.parts = parts;
+    this.length = (int) length;
   }
 
   @Override
   public int hashCode() {
-    return privateDoNotAccessOrElseSafeHtmlWrappedValue.hashCode() ^ 0x33b02fa9;
+    return getSafeHtmlString().hashCode() ^ 0x33b02fa9;
   }
 
   @Override
@@ -65,8 +115,8 @@ public final class SafeHtml {
       return false;
     }
     SafeHtml that = (SafeHtml) other;
-    return this.privateDoNotAccessOrElseSafeHtmlWrappedValue.equals(
-        that.privateDoNotAccessOrElseSafeHtmlWrappedValue);
+    return this.length == that.length
+        && this.getSafeHtmlString().equals(that.getSafeHtmlString());
   }
 
   /**
@@ -81,7 +131,7 @@ public final class SafeHtml {
    */
   @Override
   public String toString() {
-    return "SafeHtml{" + privateDoNotAccessOrElseSafeHtmlWrappedValue + "}";
+    return "SafeHtml{" + getSafeHtmlString() + "}";
   }
 
   /**
@@ -91,6 +141,80 @@ public final class SafeHtml {
   // NOTE(mlourenco): jslayout depends on this exact method name when generating code, be careful if
   // changing it.
   public String getSafeHtmlString() {
-    return privateDoNotAccessOrElseSafeHtmlWrappedValue;
+    String html = privateDoNotAccessOrElseSafeHtmlWrappedValue;
+    if (html != null) {
+      return html;
+    }
+    html = flattened;
+    if (html == null) {
+      SafeHtml[] unflattenedParts = parts;
+      if (unflattenedParts == null) {
+        // Another thread flattened this value in the meantime.
+        return flattened;
+      }
+      html = flatten(unflattenedParts);
+      // Racing threads compute equal strings, so it does not matter whose write wins.
+      flattened = html;
+      parts = null;
+    }
+    return html;
+  }
+
+  /** Returns the length of this value's underlying string, without flattening it. */
+  int length() {
+    return length;
+  }
+
+  /**
+   * Appends this value's underlying string to {@code out}, writing the parts of an unflattened
+   * concatenation one by one rather than flattening it first.
+   */
+  void appendTo(Appendable out) throws IOException {
+    // Walk the tree with an explicit stack: repeated concatenation builds arbitrarily deep trees.
+    List<SafeHtml> stack = new ArrayList<>();
+    stack.add(this);
+    while (!stack.isEmpty()) {
+      SafeHtml node = stack.remove(stack.size() - 1);
+      SafeHtml[] nodeParts = node.parts;
+      if (nodeParts == null) {
+        out.append(node.flatString());
+      } else {
+        pushPartsInReverse(stack, nodeParts);
+      }
+    }
+  }
+
+  private String flatten(SafeHtml[] rootParts) {
+    char[] chars = new char[length];
+    int pos = 0;
+    List<SafeHtml> stack = new ArrayList<>();
+    pushPartsInReverse(stack, rootParts);
+    while (!stack.isEmpty()) {
+      SafeHtml node = stack.remove(stack.size() - 1);
+      SafeHtml[] nodeParts = node.parts;
+      if (nodeParts == null) {
+        String html = node.flatString();
+        html.getChars(0, html.length(), chars, pos);
+        pos += html.length();
+      } else {
+        pushPartsInReverse(stack, nodeParts);
+      }
+    }
+    return new String(chars);
+  }
+
+  /**
+   * Returns the underlying string of a value whose {@link #parts} were read as null: either the
+   * wrapped string, or the flattened string that was set before the parts were cleared.
+   */
+  private String flatString() {
+    String html = privateDoNotAccessOrElseSafeHtmlWrappedValue;
+    return html != null ? html : flattened;
+  }
+
+  private static void pushPartsInReverse(List<SafeHtml> stack, SafeHtml[] parts) {
+    for (int i = parts.length - 1; i >= 0; i--) {
+      stack.add(parts[i]);
+    }
   }
 }
@@ -22,22 +22,25 @@
 
 package com.google.common.html.types;
 
-import static com.google.common.html.types.BuilderUtils.coerceToInterchangeValid;
+import static com.google.common.html.types.BuilderUtils.appendEscapedHtml;
 import static com.google.common.html.types.BuilderUtils.escapeHtmlInternal;
+import static com.google.common.html.types.BuilderUtils.escapedHtmlLength;
 
 import com.google.common.annotations.GwtCompatible;
-import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import com.google.errorprone.annotations.CheckReturnValue;
 import com.google.errorprone.annotations.CompileTimeConstant;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import javax.annotation.Generated;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
@@ -56,11 +59,14 @@ import javax.annotation.concurrent.NotThreadSafe;
 @GwtCompatible
 @NotThreadSafe
 public final class SafeHtmlBuilder {
-  // Keep these regular expressions compatible across Java and JavaScript native implementations.
-  // They are uncompiled because we couldn't depend on java.util.regex.Pattern or
-  // com.google.gwt.regexp.shared.RegExp
-  private static final String VALID_ELEMENT_NAMES_REGEXP = "[a-z0-9-]+";
-  private static final String VALID_DATA_ATTRIBUTES_REGEXP = "data-[a-zA-Z-]+";
+  // Element and data attribute names are validated by hand-written scanners rather than with
+  // String.matches(), which compiles a fresh Pattern on every call. We can't precompile them
+  // because we couldn't depend on java.util.regex.Pattern or com.google.gwt.regexp.shared.RegExp.
+  private static final String DATA_ATTRIBUTE_PREFIX = "data-";
+
+  private static final String[] NO_ATTRIBUTES = new String[0];
+
+  private static final int INITIAL_ATTRIBUTE_CAPACITY = 4;
 
   private static final ImmutableSet<String> UNSUPPORTED_ELEMENTS =
       ImmutableSet.of("applet", "base", "embed", "math", "meta", "object", "svg", "template");
@@ -73,11 +79,37 @@ public final class SafeHtmlBuilder {
       ImmutableSet.of(
           "area", "br", "col", "hr", "img", "input", "link", "param", "source", "track", "wbr");
 
-  private final String elementName;
-  /** We use LinkedHashMap to maintain attribute insertion order. */
-  private final Map<String, String> attributes = new LinkedHashMap<>();
+  private String elementName;
+
+  /** The {@link ElementCapabilities} of {@link #elementName}. */
+  private int capabilities;
+
+  /**
+   * Attribute names and their unescaped values, in insertion order, as parallel arrays. Elements
+   * have few attributes, so lookups scan linearly; the arrays are only allocated once the first
+   * attribute is set.
+   *
+   * <p>{@code attributeFragments} holds the attribute as rendered, {@code  name="escaped value"},
+   * for values known ahead of time such as enum constants, and null for values that are escaped
+   * when the element is built.
+   */
+  private String[] attributeNames = NO_ATTRIBUTES;
+  private String[] attributeValues = NO_ATTRIBUTES;
+  private String[] attributeFragments = NO_ATTRIBUTES;
+  private int attributeCount = 0;
+
+  /**
+   * Contents are kept as SafeHtml, without flattening them, so that building nested elements does
+   * not copy their contents at every level. Null until the first content is appended.
+   */
+  @Nullable private List<SafeHtml> contents;
 
-  private final List<String> contents = new ArrayList<>();
+  /**
+   * The bodies of a script or style element, which are SafeScript or SafeStyleSheet text rather
+   * than SafeHtml. Only those elements have them, and those elements have no {@link #contents}.
+   * Null until the first body is appended.
+   */
+  @Nullable private List<String> rawContents;
 
   private boolean useSlashOnVoid = false;
 
@@ -108,10 +140,16 @@ public final class SafeHtmlBuilder {
    * @see http://whatwg.org/html/syntax.html#void-elements
    */
   public SafeHtmlBuilder(@CompileTimeConstant final String elementName) {
+    checkElementName(elementName);
+    this.elementName = elementName;
+    this.capabilities = ElementCapabilities.of(elementName);
+  }
+
+  private static void checkElementName(String elementName) {
     if (elementName == null) {
       throw new NullPointerException();
     }
-    if (!elementName.matches(VALID_ELEMENT_NAMES_REGEXP)) {
+    if (!isValidElementName(elementName)) {
       throw new IllegalArgumentException(
           "Invalid element name \""
               + elementName
@@ -121,7 +159,44 @@ public final class SafeHtmlBuilder {
     if (UNSUPPORTED_ELEMENTS.contains(elementName)) {
       throw new IllegalArgumentException("Element \"" + elementName + "\" is not supported.");
     }
+  }
+
+  /**
+   * Clears the attributes and contents of this builder so that it can be reused to build another
+   * element with the same name, as if it had just been created. The storage allocated for the
+   * attributes and contents is kept, so reusing a builder in a loop avoids allocating a new one for
+   * each element.
+   */
+  @CanIgnoreReturnValue
+  public SafeHtmlBuilder reset() {
+    Arrays.fill(attributeNames, 0, attributeCount, null);
+    Arrays.fill(attributeValues, 0, attributeCount, null);
+    Arrays.fill(attributeFragments, 0, attributeCount, null);
+    attributeCount = 0;
+    if (contents != null) {
+      contents.clear();
+    }
+    if (rawContents != null) {
+      rawContents.clear();
+    }
+    useSlashOnVoid = false;
+    hrefValueContract = AttributeContract.TRUSTED_RESOURCE_URL;
+    return this;
+  }
+
+  /**
+   * Clears this builder as {@link #reset()} does, and makes it build an {@code elementName} element
+   * instead, as if it had just been created with {@link #SafeHtmlBuilder(String)}.
+   *
+   * @throws IllegalArgumentException if {@code elementName} contains invalid characters or is not
+   *     supported, in which case the builder is left unchanged
+   */
+  @CanIgnoreReturnValue
+  public SafeHtmlBuilder reset(@CompileTimeConstant final String elementName) {
+    checkElementName(elementName);
     this.elementName = elementName;
+    this.capabilities = ElementCapabilities.of(elementName);
+    return reset();
   }
 
   /**
@@ -156,7 +231,7 @@ public final class SafeHtmlBuilder {
    */
   @CanIgnoreReturnValue
   public SafeHtmlBuilder setAccept(String value) {
-    if (!ACCEPT_STRING_ELEMENT_ALLOWLIST.contains(elementName)) {
+    if ((capabilities & ElementCapabilities.ACCEPT_STRING) == 0) {
       throw new IllegalArgumentException(
           "Attribute \"accept\" with a String value can only be used "
               + "by one of the following elements: "
@@ -183,7 +258,7 @@ public final class SafeHtmlBuilder {
    */
   @CanIgnoreReturnValue
   public SafeHtmlBuilder setAction(SafeUrl value) {
-    if (!ACTION_SAFE_URL_ELEMENT_ALLOWLIST.contains(elementName)) {
+    if ((capabilities & ElementCapabilities.ACTION_SAFE_URL) == 0) {
       throw new IllegalArgumentException(
           "Attribute \"action\" with a SafeUrl value can only be used "
               + "by one of the following elements: "
@@ -469,9 +544,11 @@ public final class SafeHtmlBuilder {
     ASYNC("async");
 
     private final String value;
+    private final String renderedAttribute;
 
     private AsyncValue(String value) {
       this.value = value;
+      this.renderedAttribute = renderAttribute("async", value);
     }
 
     @Override
@@ -483,7 +560,7 @@ public final class SafeHtmlBuilder {
   /** Sets the {@code async} attribute for this element. */
   @CanIgnoreReturnValue
   public SafeHtmlBuilder setAsync(AsyncValue value) {
-    return setAttribute("async", value.toString());
+    return setRenderedAttribute("async", value.value, value.renderedAttribute);
   }
 
   /** Sets the {@code autocapitalize} attribute for this element. */
@@ -612,7 +689,7 @@ public final class SafeHtmlBuilder {
    */
   @CanIgnoreReturnValue
   public SafeHtmlBuilder setDefer(String value) {
-    if (!DEFER_STRING_ELEMENT_ALLOWLIST.contains(elementName)) {
+    if ((capabilities & ElementCapabilities.DEFER_STRING) == 0) {
       throw new IllegalArgumentException(
           "Attribute \"defer\" with a String value can only be used "
               + "by one of the following elements: "
@@ -632,9 +709,11 @@ public final class SafeHtmlBuilder {
     RTL("rtl");
 
     private final String value;
+    private final String renderedAttribute;
 
     private DirValue(String value) {
       this.value = value;
+      this.renderedAttribute = renderAttribute("dir", value);
     }
 
     @Override
@@ -646,7 +725,7 @@ public final class SafeHtmlBuilder {
   /** Sets the {@code dir} attribute for this element. */
   @CanIgnoreReturnValue
   public SafeHtmlBuilder setDir(DirValue value) {
-    return setAttribute("dir", value.toString());
+    return setRenderedAttribute("dir", value.value, value.renderedAttribute);
   }
 
   /** Sets the {@code disabled} attribute for this element. */
@@ -718,7 +797,7 @@ public final class SafeHtmlBuilder {
    */
   @CanIgnoreReturnValue
   public SafeHtmlBuilder setFormaction(SafeUrl value) {
-    if (!FORMACTION_SAFE_URL_ELEMENT_ALLOWLIST.contains(elementName)) {
+    if ((capabilities & ElementCapabilities.FORMACTION_SAFE_URL) == 0) {
       throw new IllegalArgumentException(
           "Attribute \"formaction\" with a SafeUrl value can only be used "
               + "by one of the following elements: "
@@ -752,7 +831,7 @@ public final class SafeHtmlBuilder {
    */
   @CanIgnoreReturnValue
   public SafeHtmlBuilder setFormmethod(String value) {
-    if (!FORMMETHOD_STRING_ELEMENT_ALLOWLIST.contains(elementName)) {
+    if ((capabilities & ElementCapabilities.FORMMETHOD_STRING) == 0) {
       throw new IllegalArgumentException(
           "Attribute \"formmethod\" with a String value can only be used "
               + "by one of the following elements: "
@@ -847,14 +926,14 @@ public final class SafeHtmlBuilder {
    */
   @CanIgnoreReturnValue
   public SafeHtmlBuilder setHref(SafeUrl value) {
-    if (!HREF_SAFE_URL_ELEMENT_ALLOWLIST.contains(elementName) && !elementName.equals("link")) {
+    if ((capabilities & (ElementCapabilities.HREF_SAFE_URL | ElementCapabilities.LINK)) == 0) {
       throw new IllegalArgumentException(
           "Attribute \"href\" with a SafeUrl value can only be used "
               + "by one of the following elements: "
               + HREF_SAFE_URL_ELEMENT_ALLOWLIST);
     }
-    if (elementName.equals("link")) {
-      checkLinkDependentAttributes(attributes.get("rel"), AttributeContract.SAFE_URL);
+    if ((capabilities & ElementCapabilities.LINK) != 0) {
+      checkLinkDependentAttributes(getAttribute("rel"), AttributeContract.SAFE_URL);
     }
     hrefValueContract = AttributeContract.SAFE_URL;
     return setAttribute("href", value.getSafeUrlString());
@@ -970,9 +1049,11 @@ public final class SafeHtmlBuilder {
     LAZY("lazy");
 
     private final String value;
+    private final String renderedAttribute;
 
     private LoadingValue(String value) {
       this.value = value;
+      this.renderedAttribute = renderAttribute("loading", value);
     }
 
     @Override
@@ -984,7 +1065,7 @@ public final class SafeHtmlBuilder {
   /** Sets the {@code loading} attribute for this element. */
   @CanIgnoreReturnValue
   public SafeHtmlBuilder setLoading(LoadingValue value) {
-    return setAttribute("loading", value.toString());
+    return setRenderedAttribute("loading", value.value, value.renderedAttribute);
   }
 
   /** Sets the {@code loop} attribute for this element. */
@@ -1029,7 +1110,7 @@ public final class SafeHtmlBuilder {
    */
   @CanIgnoreReturnValue
   public SafeHtmlBuilder setMethod(String value) {
-    if (!METHOD_STRING_ELEMENT_ALLOWLIST.contains(elementName)) {
+    if ((capabilities & ElementCapabilities.METHOD_STRING) == 0) {
       throw new IllegalArgumentException(
           "Attribute \"method\" with a String value can only be used "
               + "by one of the following elements: "
@@ -1112,7 +1193,7 @@ public final class SafeHtmlBuilder {
    */
   @CanIgnoreReturnValue
   public SafeHtmlBuilder setPattern(String value) {
-    if (!PATTERN_STRING_ELEMENT_ALLOWLIST.contains(elementName)) {
+    if ((capabilities & ElementCapabilities.PATTERN_STRING) == 0) {
       throw new IllegalArgumentException(
           "Attribute \"pattern\" with a String value can only be used "
               + "by one of the following elements: "
@@ -1158,7 +1239,7 @@ public final class SafeHtmlBuilder {
    */
   @CanIgnoreReturnValue
   public SafeHtmlBuilder setReadonly(String value) {
-    if (!READONLY_STRING_ELEMENT_ALLOWLIST.contains(elementName)) {
+    if ((capabilities & ElementCapabilities.READONLY_STRING) == 0) {
       throw new IllegalArgumentException(
           "Attribute \"readonly\" with a String value can only be used "
               + "by one of the following elements: "
@@ -1178,7 +1259,7 @@ public final class SafeHtmlBuilder {
    */
   @CanIgnoreReturnValue
   public SafeHtmlBuilder setRel(String value) {
-    if (elementName.equals("link")) {
+    if ((capabilities & ElementCapabilities.LINK) != 0) {
       checkLinkDependentAttributes(value, hrefValueContract);
     }
     return setAttribute("rel", value);
@@ -1278,7 +1359,7 @@ public final class SafeHtmlBuilder {
    */
   @CanIgnoreReturnValue
   public SafeHtmlBuilder setSrc(SafeUrl value) {
-    if (!SRC_SAFE_URL_ELEMENT_ALLOWLIST.contains(elementName)) {
+    if ((capabilities & ElementCapabilities.SRC_SAFE_URL) == 0) {
       throw new IllegalArgumentException(
           "Attribute \"src\" with a SafeUrl value can only be used "
               + "by one of the following elements: "
@@ -1311,7 +1392,7 @@ public final class SafeHtmlBuilder {
    */
   @CanIgnoreReturnValue
   public SafeHtmlBuilder setSrcdoc(SafeHtml value) {
-    if (!SRCDOC_SAFE_HTML_ELEMENT_ALLOWLIST.contains(elementName)) {
+    if ((capabilities & ElementCapabilities.SRCDOC_SAFE_HTML) == 0) {
       throw new IllegalArgumentException(
           "Attribute \"srcdoc\" with a SafeHtml value can only be used "
               + "by one of the following elements: "
@@ -1359,9 +1440,11 @@ public final class SafeHtmlBuilder {
     SELF("_self");
 
     private final String value;
+    private final String renderedAttribute;
 
     private TargetValue(String value) {
       this.value = value;
+      this.renderedAttribute = renderAttribute("target", value);
     }
 
     @Override
@@ -1373,7 +1456,7 @@ public final class SafeHtmlBuilder {
   /** Sets the {@code target} attribute for this element. */
   @CanIgnoreReturnValue
   public SafeHtmlBuilder setTarget(TargetValue value) {
-    return setAttribute("target", value.toString());
+    return setRenderedAttribute("target", value.value, value.renderedAttribute);
   }
 
   /** Sets the {@code title} attribute for this element. */
@@ -1429,7 +1512,7 @@ public final class SafeHtmlBuilder {
    */
   @CanIgnoreReturnValue
   public SafeHtmlBuilder setDataAttribute(@CompileTimeConstant final String name, String value) {
-    if (!name.matches(VALID_DATA_ATTRIBUTES_REGEXP)) {
+    if (!isValidDataAttributeName(name)) {
       throw new IllegalArgumentException(
           "Invalid data attribute name \""
               + name
@@ -1439,6 +1522,35 @@ public final class SafeHtmlBuilder {
     return setAttribute(name, value);
   }
 
+  /** Returns whether {@code name} matches {@code [a-z0-9-]+}. */
+  private static boolean isValidElementName(String name) {
+    if (name.isEmpty()) {
+      return false;
+    }
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (!(('a' <= c && c <= 'z') || ('0' <= c && c <= '9') || c == '-')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns whether {@code name} matches {@code data-[a-zA-Z-]+}. */
+  private static boolean isValidDataAttributeName(String name) {
+    if (name.length() <= DATA_ATTRIBUTE_PREFIX.length()
+        || !name.startsWith(DATA_ATTRIBUTE_PREFIX)) {
+      return false;
+    }
+    for (int i = DATA_ATTRIBUTE_PREFIX.length(); i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (!(('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z') || c == '-')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Appends the given {@code htmls} as this element's content, in sequence.
    *
@@ -1473,7 +1585,7 @@ public final class SafeHtmlBuilder {
   public SafeHtmlBuilder appendContent(Iterator<SafeHtml> htmls) {
     checkSafeHtmlElement();
     while (htmls.hasNext()) {
-      contents.add(htmls.next().getSafeHtmlString());
+      addContent(htmls.next());
     }
     return this;
   }
@@ -1487,7 +1599,7 @@ public final class SafeHtmlBuilder {
   @CanIgnoreReturnValue
   public SafeHtmlBuilder appendScriptContent(SafeScript script) {
     checkSafeScriptElement();
-    contents.add(script.getSafeScriptString());
+    addRawContent(script.getSafeScriptString());
     return this;
   }
 
@@ -1499,7 +1611,7 @@ public final class SafeHtmlBuilder {
   @CanIgnoreReturnValue
   public SafeHtmlBuilder appendStyleContent(SafeStyleSheet style) {
     checkSafeStyleSheetElement();
-    contents.add(style.getSafeStyleSheetString());
+    addRawContent(style.getSafeStyleSheetString());
     return this;
   }
 
@@ -1522,32 +1634,41 @@ public final class SafeHtmlBuilder {
     }
   }
 
+  // The checks below build their messages only when they fail, as they run for every content.
+
   private void checkSafeHtmlElement() {
     checkNotVoidElement();
-    Preconditions.checkState(
-        !SCRIPT_ELEMENTS.contains(elementName),
-        "Element \"" + elementName + "\" requires SafeScript contents, not SafeHTML or text.");
-    Preconditions.checkState(
-        !STYLESHEET_ELEMENTS.contains(elementName),
-        "Element \"" + elementName + "\" requires SafeStyleSheet contents, not SafeHTML or text.");
+    if ((capabilities & ElementCapabilities.SCRIPT) != 0) {
+      throw new IllegalStateException(
+          "Element \"" + elementName + "\" requires SafeScript contents, not SafeHTML or text.");
+    }
+    if ((capabilities & ElementCapabilities.STYLESHEET) != 0) {
+      throw new IllegalStateException(
+          "Element \""
+              + elementName
+              + "\" requires SafeStyleSheet contents, not SafeHTML or text.");
+    }
   }
 
   private void checkSafeScriptElement() {
-    Preconditions.checkState(
-        SCRIPT_ELEMENTS.contains(elementName),
-        "Element \"" + elementName + "\" must not contain SafeScript.");
+    if ((capabilities & ElementCapabilities.SCRIPT) == 0) {
+      throw new IllegalStateException(
+          "Element \"" + elementName + "\" must not contain SafeScript.");
+    }
   }
 
   private void checkSafeStyleSheetElement() {
-    Preconditions.checkState(
-        STYLESHEET_ELEMENTS.contains(elementName),
-        "Element \"" + elementName + "\" must not contain SafeStyleSheet.");
+    if ((capabilities & ElementCapabilities.STYLESHEET) == 0) {
+      throw new IllegalStateException(
+          "Element \"" + elementName + "\" must not contain SafeStyleSheet.");
+    }
   }
 
   private void checkNotVoidElement() {
-    Preconditions.checkState(
-        !VOID_ELEMENTS.contains(elementName),
-        "Element \"" + elementName + "\" is a void element and so cannot have content.");
+    if ((capabilities & ElementCapabilities.VOID) != 0) {
+      throw new IllegalStateException(
+          "Element \"" + elementName + "\" is a void element and so cannot have content.");
+    }
   }
 
   /**
@@ -1561,24 +1682,152 @@ public final class SafeHtmlBuilder {
     return appendContent(SafeHtmls.htmlEscape(text));
   }
 
+  /**
+   * HTML-escapes and appends {@code text} to this element's content. See {@link
+   * SafeHtmls#htmlEscape(CharSequence)}.
+   *
+   * @throws IllegalStateException if this builder represents a void element
+   */
+  @CanIgnoreReturnValue
+  public SafeHtmlBuilder escapeAndAppendContent(CharSequence text) {
+    return appendContent(SafeHtmls.htmlEscape(text));
+  }
+
+  /**
+   * HTML-escapes and appends the {@code length} chars of {@code text} starting at {@code offset} to
+   * this element's content.
+   *
+   * @throws IllegalStateException if this builder represents a void element
+   * @throws IndexOutOfBoundsException if the range is not within {@code text}
+   */
+  @CanIgnoreReturnValue
+  public SafeHtmlBuilder escapeAndAppendContent(char[] text, int offset, int length) {
+    return appendContent(SafeHtmls.htmlEscape(text, offset, length));
+  }
+
   public SafeHtml build() {
-    StringBuilder sb = new StringBuilder("<" + elementName);
-    for (Map.Entry<String, String> entry : attributes.entrySet()) {
-      sb.append(" " + entry.getKey() + "=\"" + escapeHtmlInternal(entry.getValue()) + "\"");
+    int length = buildLength();
+    // Script and style bodies are not SafeHtml, so those elements are always built as one string.
+    if (length < SafeHtmls.MIN_LAZY_CONCAT_LENGTH || contents == null || contents.isEmpty()) {
+      StringBuilder sb = new StringBuilder(length);
+      try {
+        appendTo(sb);
+      } catch (IOException e) {
+        // StringBuilder does not throw IOException.
+        throw new AssertionError(e);
+      }
+      return SafeHtmls.create(sb.toString());
     }
 
-    boolean isVoid = VOID_ELEMENTS.contains(elementName);
-    if (isVoid && useSlashOnVoid) {
-      sb.append("/");
+    // Large contents are referenced rather than copied; see SafeHtmls.concat.
+    String closeTag = "</" + elementName + ">";
+    StringBuilder openTag = new StringBuilder(length - contentsLength() - closeTag.length());
+    try {
+      appendOpenTag(openTag);
+    } catch (IOException e) {
+      // StringBuilder does not throw IOException.
+      throw new AssertionError(e);
+    }
+    List<SafeHtml> parts = new ArrayList<>(contents.size() + 2);
+    parts.add(SafeHtmls.create(openTag.toString()));
+    parts.addAll(contents);
+    parts.add(SafeHtmls.create(closeTag));
+    return SafeHtmls.concat(parts);
+  }
+
+  /**
+   * Streams the element into {@code out} instead of building a {@link SafeHtml}: the open tag, the
+   * escaped attributes, the contents and the close tag are appended in order, without first being
+   * collected into an intermediate string. This is useful to write large elements straight into a
+   * {@link java.io.Writer} such as a servlet response.
+   *
+   * <p>The characters appended are exactly those of {@code build().getSafeHtmlString()}, and so
+   * satisfy the {@link SafeHtml} contract as long as {@code out} is itself at a position where that
+   * SafeHtml could be placed.
+   *
+   * @return {@code out}
+   * @throws IOException if {@code out} throws it
+   */
+  @CanIgnoreReturnValue
+  public <A extends Appendable> A buildTo(A out) throws IOException {
+    appendTo(out);
+    return out;
+  }
+
+  /** Returns the exact number of chars {@link #appendTo} will append. */
+  private int buildLength() {
+    // "<" + elementName + ">"
+    int length = elementName.length() + 2;
+    for (int i = 0; i < attributeCount; i++) {
+      if (attributeFragments[i] != null) {
+        length += attributeFragments[i].length();
+      } else {
+        // " " + name + "=\"" + escaped value + "\""
+        length += attributeNames[i].length() + escapedHtmlLength(attributeValues[i]) + 4;
+      }
     }
-    sb.append(">");
+    if ((capabilities & ElementCapabilities.VOID) != 0) {
+      if (useSlashOnVoid) {
+        length++;
+      }
+    } else {
+      // "</" + elementName + ">"
+      length += contentsLength() + elementName.length() + 3;
+    }
+    return length;
+  }
+
+  private int contentsLength() {
+    int length = 0;
+    if (contents != null) {
+      for (SafeHtml content : contents) {
+        length += content.length();
+      }
+    }
+    if (rawContents != null) {
+      for (String content : rawContents) {
+        length += content.length();
+      }
+    }
+    return length;
+  }
+
+  private void appendTo(Appendable out) throws IOException {
+    boolean isVoid = appendOpenTag(out);
     if (!isVoid) {
-      for (String content : contents) {
-        sb.append(content);
+      if (contents != null) {
+        for (SafeHtml content : contents) {
+          content.appendTo(out);
+        }
       }
-      sb.append("</" + elementName + ">");
+      if (rawContents != null) {
+        for (String content : rawContents) {
+          out.append(content);
+        }
+      }
+      out.append("</").append(elementName).append('>');
     }
-    return SafeHtmls.create(sb.toString());
+  }
+
+  /** Appends the start tag and its attributes, and returns whether this is a void element. */
+  private boolean appendOpenTag(Appendable out) throws IOException {
+    out.append('<').append(elementName);
+    for (int i = 0; i < attributeCount; i++) {
+      if (attributeFragments[i] != null) {
+        out.append(attributeFragments[i]);
+      } else {
+        out.append(' ').append(attributeNames[i]).append("=\"");
+        appendEscapedHtml(out, attributeValues[i]);
+        out.append('"');
+      }
+    }
+
+    boolean isVoid = (capabilities & ElementCapabilities.VOID) != 0;
+    if (isVoid && useSlashOnVoid) {
+      out.append('/');
+    }
+    out.append('>');
+    return isVoid;
   }
 
   @CanIgnoreReturnValue
@@ -1586,7 +1835,131 @@ public final class SafeHtmlBuilder {
     if (value == null) {
       throw new NullPointerException("setAttribute requires a non-null value.");
     }
-    attributes.put(name, coerceToInterchangeValid(value));
+    // Values are unicode-coerced when they are escaped.
+    putAttribute(name, value, null);
+    return this;
+  }
+
+  /**
+   * Sets attribute {@code name} to {@code value}, whose rendering {@code renderedAttribute} was
+   * computed ahead of time by {@link #renderAttribute}, so that building appends it as is.
+   */
+  private SafeHtmlBuilder setRenderedAttribute(
+      String name, String value, String renderedAttribute) {
+    putAttribute(name, value, renderedAttribute);
     return this;
   }
+
+  /** Returns attribute {@code name} with value {@code value} as it is rendered in a start tag. */
+  private static String renderAttribute(String name, String value) {
+    return " " + name + "=\"" + escapeHtmlInternal(value) + "\"";
+  }
+
+  /**
+   * Sets attribute {@code name} to {@code value}, overwriting its value in place if it is already
+   * set so that it keeps its original position.
+   */
+  private void putAttribute(String name, String value, @Nullable String renderedAttribute) {
+    for (int i = 0; i < attributeCount; i++) {
+      if (attributeNames[i].equals(name)) {
+        attributeValues[i] = value;
+        attributeFragments[i] = renderedAttribute;
+        return;
+      }
+    }
+    if (attributeCount == attributeNames.length) {
+      int capacity = Math.max(INITIAL_ATTRIBUTE_CAPACITY, attributeCount * 2);
+      attributeNames = Arrays.copyOf(attributeNames, capacity);
+      attributeValues = Arrays.copyOf(attributeValues, capacity);
+      attributeFragments = Arrays.copyOf(attributeFragments, capacity);
+    }
+    attributeNames[attributeCount] = name;
+    attributeValues[attributeCount] = value;
+    attributeFragments[attributeCount] = renderedAttribute;
+    attributeCount++;
+  }
+
+  /** Returns the value of attribute {@code name}, or null if it is not set. */
+  @Nullable
+  private String getAttribute(String name) {
+    for (int i = 0; i < attributeCount; i++) {
+      if (attributeNames[i].equals(name)) {
+        return attributeValues[i];
+      }
+    }
+    return null;
+  }
+
+  private void addContent(SafeHtml content) {
+    if (contents == null) {
+      contents = new ArrayList<>();
+    }
+    contents.add(content);
+  }
+
+  private void addRawContent(String content) {
+    if (rawContents == null) {
+      rawContents = new ArrayList<>();
+    }
+    rawContents.add(content);
+  }
+
+  /**
+   * Bits describing what an element permits, resolved from its name once per builder so that
+   * setters and content checks test a bit instead of looking the name up in a set. Element names
+   * in none of the sets, such as custom elements, have no capabilities.
+   */
+  private static final class ElementCapabilities {
+    static final int VOID = 1;
+    static final int SCRIPT = 1 << 1;
+    static final int STYLESHEET = 1 << 2;
+    static final int LINK = 1 << 3;
+    static final int ACCEPT_STRING = 1 << 4;
+    static final int ACTION_SAFE_URL = 1 << 5;
+    static final int DEFER_STRING = 1 << 6;
+    static final int FORMACTION_SAFE_URL = 1 << 7;
+    static final int FORMMETHOD_STRING = 1 << 8;
+    static final int HREF_SAFE_URL = 1 << 9;
+    static final int METHOD_STRING = 1 << 10;
+    static final int PATTERN_STRING = 1 << 11;
+    static final int READONLY_STRING = 1 << 12;
+    static final int SRC_SAFE_URL = 1 << 13;
+    static final int SRCDOC_SAFE_HTML = 1 << 14;
+
+    // Built from the sets of the enclosing class, which are all initialized by the time this
+    // class is first used.
+    private static final ImmutableMap<String, Integer> BY_ELEMENT_NAME = byElementName();
+
+    static int of(String elementName) {
+      Integer capabilities = BY_ELEMENT_NAME.get(elementName);
+      return capabilities == null ? 0 : capabilities;
+    }
+
+    private static ImmutableMap<String, Integer> byElementName() {
+      Map<String, Integer> byElementName = new HashMap<>();
+      add(byElementName, VOID_ELEMENTS, VOID);
+      add(byElementName, SCRIPT_ELEMENTS, SCRIPT);
+      add(byElementName, STYLESHEET_ELEMENTS, STYLESHEET);
+      add(byElementName, ImmutableSet.of("link"), LINK);
+      add(byElementName, ACCEPT_STRING_ELEMENT_ALLOWLIST, ACCEPT_STRING);
+      add(byElementName, ACTION_SAFE_URL_ELEMENT_ALLOWLIST, ACTION_SAFE_URL);
+      add(byElementName, DEFER_STRING_ELEMENT_ALLOWLIST, DEFER_STRING);
+      add(byElementName, FORMACTION_SAFE_URL_ELEMENT_ALLOWLIST, FORMACTION_SAFE_URL);
+      add(byElementName, FORMMETHOD_STRING_ELEMENT_ALLOWLIST, FORMMETHOD_STRING);
+      add(byElementName, HREF_SAFE_URL_ELEMENT_ALLOWLIST, HREF_SAFE_URL);
+      add(byElementName, METHOD_STRING_ELEMENT_ALLOWLIST, METHOD_STRING);
+      add(byElementName, PATTERN_STRING_ELEMENT_ALLOWLIST, PATTERN_STRING);
+      add(byElementName, READONLY_STRING_ELEMENT_ALLOWLIST, READONLY_STRING);
+      add(byElementName, SRC_SAFE_URL_ELEMENT_ALLOWLIST, SRC_SAFE_URL);
+      add(byElementName, SRCDOC_SAFE_HTML_ELEMENT_ALLOWLIST, SRCDOC_SAFE_HTML);
+      return ImmutableMap.copyOf(byElementName);
+    }
+
+    private static void add(Map<String, Integer> byElementName, Set<String> names, int bit) {
+      for (String name : names) {
+        Integer capabilities = byElementName.get(name);
+        byElementName.put(name, capabilities == null ? bit : capabilities | bit);
+      }
+    }
+  }
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.html.types;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.base.Charsets;
+import com.google.errorprone.annotations.CheckReturnValue;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A {@link SafeHtml} encoded as UTF-8 once, for HTML that is written out many times, such as page
+ * headers and footers loaded with {@link SafeHtmls#fromResource(String)}. Writing it copies its
+ * bytes as they are instead of encoding the same string again on every response.
+ *
+ * <p>Instances are obtained from {@link SafeHtmls#toUtf8Bytes(SafeHtml)}, or by escaping UTF-8 text
+ * with {@link SafeHtmls#htmlEscapeUtf8(byte[])}. Like SafeHtml, they are immutable: their bytes
+ * are only handed out as copies or read-only buffers. Unpaired surrogates are encoded as {@code
+ * '?'}, as {@link String#getBytes} does.
+ */
+@CheckReturnValue
+@GwtIncompatible("ByteBuffer")
+@Immutable
+public final class SafeHtmlBytes {
+
+  private final byte[] utf8;
+
+  /**
+   * The SafeHtml these bytes encode. For bytes that were escaped directly, it is only decoded if it
+   * is asked for, which is the one piece of state that changes after construction. The race on
+   * this field is benign: racing threads may each decode it, but they compute equal values, and a
+   * SafeHtml wrapping a string is safely published through its final field.
+   */
+  @Nullable private SafeHtml html;
+
+  SafeHtmlBytes(SafeHtml html) {
+    this.html = html;
+    // Not java.nio.charset.StandardCharsets, which older Android SDKs do not have.
+    this.utf8 = html.getSafeHtmlString().getBytes(Charsets.UTF_8);
+  }
+
+  /**
+   * Wraps {@code utf8}, which must be valid UTF-8 that satisfies the SafeHtml contract, and which
+   * must not be modified afterwards.
+   */
+  SafeHtmlBytes(byte[] utf8) {
+    this.utf8 = utf8;
+  }
+
+  /** Returns the SafeHtml these bytes encode. */
+  public SafeHtml toSafeHtml() {
+    SafeHtml result = html;
+    if (result == null) {
+      result = SafeHtmls.create(new String(utf8, Charsets.UTF_8));
+      html = result;
+    }
+    return result;
+  }
+
+  /** Returns the number of bytes in the UTF-8 encoding. */
+  public int length() {
+    return utf8.length;
+  }
+
+  /**
+   * Returns a read-only buffer over the UTF-8 encoding, positioned at its start. The bytes are not
+   * copied, and each call returns a new buffer with its own position.
+   */
+  public ByteBuffer asByteBuffer() {
+    return ByteBuffer.wrap(utf8).asReadOnlyBuffer();
+  }
+
+  /** Returns a copy of the UTF-8 encoding. */
+  public byte[] toByteArray() {
+    return utf8.clone();
+  }
+
+  /** Writes the UTF-8 encoding to {@code out}. */
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(utf8);
+  }
+
+  /** Writes the UTF-8 encoding to {@code channel}, blocking until all of it has been written. */
+  public void writeTo(WritableByteChannel channel) throws IOException {
+    ByteBuffer buffer = asByteBuffer();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /** Hashes the encoded bytes, without decoding them. */
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(utf8) ^ 0x5a3e0b71;
+  }
+
+  /**
+   * Compares the encoded bytes, without decoding them. SafeHtmls that differ only in unpaired
+   * surrogates encode to equal bytes, since each surrogate is encoded as {@code '?'}.
+   */
+  @Override
+  public boolean equals(@Nullable Object other) {
+    return other instanceof SafeHtmlBytes && Arrays.equals(utf8, ((SafeHtmlBytes) other).utf8);
+  }
+
+  /**
+   * Returns a debug representation of the underlying HTML, NOT the encoded bytes.
+   *
+   * @see SafeHtml#toString
+   */
+  @Override
+  public String toString() {
+    return "SafeHtmlBytes{" + toSafeHtml().getSafeHtmlString() + "}";
+  }
+}
@@ -16,18 +16,24 @@
 
 package com.google.common.html.types;
 
-import static com.google.common.html.types.BuilderUtils.coerceToInterchangeValid;
+import static com.google.common.html.types.BuilderUtils.appendEscapedHtml;
 import static com.google.common.html.types.BuilderUtils.escapeHtmlInternal;
+import static com.google.common.html.types.BuilderUtils.escapeHtmlPreservingWhitespace;
 
 import com.google.common.annotations.GwtCompatible;
 import com.google.common.annotations.GwtIncompatible;
 import com.google.common.base.Preconditions;
 import com.google.common.io.Resources;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import com.google.errorprone.annotations.CheckReturnValue;
 import com.google.errorprone.annotations.CompileTimeConstant;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 /** Protocol conversions, builders and factory methods for {@link SafeHtml}. */
 @CheckReturnValue
@@ -207,27 +213,138 @@ public final class SafeHtmls {
         .build();
   }
 
+  /**
+   * Encodes {@code safeHtml} as UTF-8 once, for HTML that is cached and written out repeatedly, so
+   * that writing it does not encode the same string again every time.
+   */
+  @GwtIncompatible("SafeHtmlBytes")
+  public static SafeHtmlBytes toUtf8Bytes(SafeHtml safeHtml) {
+    return new SafeHtmlBytes(safeHtml);
+  }
+
+  /**
+   * Converts, by HTML-escaping, UTF-8 encoded text into contract-compliant {@link SafeHtmlBytes},
+   * without decoding it into a String. This suits proxies that embed UTF-8 payloads in HTML
+   * responses.
+   *
+   * <p>The result encodes what {@link #htmlEscape(String)} returns for the decoded text. Each
+   * maximal subpart of an ill-formed sequence is replaced with U+FFFD, as browsers do. Unlike in
+   * {@code new String(utf8, UTF_8)}, an encoded surrogate such as {@code ED A0 80} thus becomes
+   * three U+FFFD rather than one.
+   */
+  @GwtIncompatible("SafeHtmlBytes")
+  public static SafeHtmlBytes htmlEscapeUtf8(byte[] utf8) {
+    return htmlEscapeUtf8(utf8, 0, utf8.length);
+  }
+
+  /**
+   * Converts, by HTML-escaping, the {@code length} UTF-8 bytes of {@code utf8} starting at {@code
+   * offset} into contract-compliant {@link SafeHtmlBytes}, as {@link #htmlEscapeUtf8(byte[])} does.
+   *
+   * @throws IndexOutOfBoundsException if the range is not within {@code utf8}
+   */
+  @GwtIncompatible("SafeHtmlBytes")
+  public static SafeHtmlBytes htmlEscapeUtf8(byte[] utf8, int offset, int length) {
+    Preconditions.checkPositionIndexes(offset, offset + length, utf8.length);
+    return new SafeHtmlBytes(Utf8HtmlEscaper.escape(utf8, offset, offset + length));
+  }
+
+  /**
+   * Converts, by HTML-escaping, the remaining UTF-8 bytes of {@code utf8} into contract-compliant
+   * {@link SafeHtmlBytes}, as {@link #htmlEscapeUtf8(byte[])} does. The buffer's position is
+   * advanced to its limit.
+   */
+  @GwtIncompatible("ByteBuffer")
+  public static SafeHtmlBytes htmlEscapeUtf8(ByteBuffer utf8) {
+    int length = utf8.remaining();
+    SafeHtmlBytes result;
+    if (utf8.hasArray()) {
+      int offset = utf8.arrayOffset() + utf8.position();
+      result = new SafeHtmlBytes(Utf8HtmlEscaper.escape(utf8.array(), offset, offset + length));
+      utf8.position(utf8.limit());
+    } else {
+      byte[] bytes = new byte[length];
+      utf8.get(bytes);
+      result = new SafeHtmlBytes(Utf8HtmlEscaper.escape(bytes, 0, length));
+    }
+    return result;
+  }
+
+  /**
+   * Writes the {@code length} UTF-8 bytes of {@code utf8} starting at {@code offset} to {@code
+   * out}, HTML-escaped exactly as {@link #htmlEscapeUtf8(byte[], int, int)} would escape them,
+   * without building the escaped bytes.
+   *
+   * <p>Each call must be given whole UTF-8 sequences: a sequence split across two calls is
+   * ill-formed in both, and replaced.
+   *
+   * @throws IndexOutOfBoundsException if the range is not within {@code utf8}
+   * @throws IOException if {@code out} throws it
+   */
+  @GwtIncompatible("OutputStream")
+  public static void writeHtmlEscapedUtf8(OutputStream out, byte[] utf8, int offset, int length)
+      throws IOException {
+    Preconditions.checkPositionIndexes(offset, offset + length, utf8.length);
+    Utf8HtmlEscaper.writeEscaped(out, utf8, offset, offset + length);
+  }
+
   /** Converts, by HTML-escaping, an arbitrary string into a contract-compliant {@link SafeHtml}. */
   public static SafeHtml htmlEscape(String text) {
     return create(htmlEscapeInternal(text));
   }
 
+  /**
+   * Converts, by HTML-escaping, text held in a StringBuilder, a CharBuffer or another CharSequence
+   * into a contract-compliant {@link SafeHtml}.
+   *
+   * <p>The text is escaped in place, without first copying it into a String. Text that needs no
+   * escaping is copied once, into the SafeHtml's own string; otherwise the escaped string is the
+   * only one built. To write escaped text without building any string, use {@link
+   * #appendHtmlEscaped}.
+   */
+  public static SafeHtml htmlEscape(CharSequence text) {
+    // Escaping also unicode-coerces, in the same pass.
+    return create(escapeHtmlInternal(text));
+  }
+
+  /**
+   * Converts, by HTML-escaping, the {@code length} chars of {@code text} starting at {@code offset}
+   * into a contract-compliant {@link SafeHtml}. As with {@link #htmlEscape(CharSequence)}, the
+   * chars are escaped in place. A surrogate at either end of the range is unpaired, as the chars
+   * outside it are not read.
+   *
+   * @throws IndexOutOfBoundsException if the range is not within {@code text}
+   */
+  public static SafeHtml htmlEscape(char[] text, int offset, int length) {
+    Preconditions.checkPositionIndexes(offset, offset + length, text.length);
+    return create(escapeHtmlInternal(text, offset, length));
+  }
+
+  /**
+   * Appends {@code text} to {@code out}, HTML-escaped exactly as {@link #htmlEscape(String)} would
+   * escape it, without building the escaped string. This suits writing text straight into an HTML
+   * response that is otherwise built from SafeHtml values, e.g. with {@link #appendTo}.
+   *
+   * @return {@code out}
+   * @throws IOException if {@code out} throws it
+   */
+  @CanIgnoreReturnValue
+  public static <A extends Appendable> A appendHtmlEscaped(A out, CharSequence text)
+      throws IOException {
+    appendEscapedHtml(out, text);
+    return out;
+  }
+
   /** Returns HTML-escaped text as a SafeHtml object, with newlines changed to {@code <br>}. */
   public static SafeHtml htmlEscapePreservingNewlines(String text) {
-    return create(htmlEscapeInternal(text).replaceAll("\r?\n|\r", "<br>"));
+    return create(escapeHtmlPreservingWhitespace(text, false));
   }
 
   /** Returns HTML-escaped text as a SafeHtml object, with newlines changed to {@code <br>}. */
   public static SafeHtml htmlEscapePreservingWhitespace(String text) {
-    String html =
-        htmlEscapeInternal(text)
-            // Leading space is converted into a non-breaking space, and spaces following whitespace
-            // are converted into non-breaking spaces. This must happen first, to ensure we preserve
-            // spaces after newlines.
-            .replaceAll("(^|[\r\n\t ]) ", "$1&#160;")
-            .replaceAll("\r?\n|\r", "<br>")
-            .replaceAll("(\t+)", "<span style=\"white-space:pre\">$1</span>");
-    return create(html);
+    // Leading space is converted into a non-breaking space, and spaces following whitespace are
+    // converted into non-breaking spaces. Runs of tabs are wrapped in a white-space:pre span.
+    return create(escapeHtmlPreservingWhitespace(text, true));
   }
 
   /**
@@ -257,18 +374,49 @@ public final class SafeHtmls {
   /**
    * Creates a new SafeHtml which contains, in order, the string representations of the given {@code
    * htmls}.
+   *
+   * <p>Unless the result is short, the contents of {@code htmls} are not copied: the result refers
+   * to them and is only flattened into a single string when {@link SafeHtml#getSafeHtmlString()} is
+   * first called on it. {@link #appendTo(Appendable, SafeHtml)} writes it out without flattening.
    */
   public static SafeHtml concat(Iterable<SafeHtml> htmls) {
-    int concatLength = 0;
+    List<SafeHtml> parts = new ArrayList<>();
+    long concatLength = 0;
     for (SafeHtml html : htmls) {
-      concatLength += html.getSafeHtmlString().length();
+      if (html.length() != 0) {
+        parts.add(html);
+        concatLength += html.length();
+      }
     }
 
-    StringBuilder result = new StringBuilder(concatLength);
-    for (SafeHtml html : htmls) {
-      result.append(html.getSafeHtmlString());
+    if (parts.isEmpty()) {
+      return SafeHtml.EMPTY;
+    }
+    if (parts.size() == 1) {
+      return parts.get(0);
     }
-    return create(result.toString());
+    if (concatLength < MIN_LAZY_CONCAT_LENGTH) {
+      StringBuilder result = new StringBuilder((int) concatLength);
+      for (SafeHtml html : parts) {
+        result.append(html.getSafeHtmlString());
+      }
+      return create(result.toString());
+    }
+    return new SafeHtml(parts.toArray(new SafeHtml[parts.size()]));
+  }
+
+  /**
+   * Appends the string representation of {@code html} to {@code out}. Unlike appending {@code
+   * html.getSafeHtmlString()}, this does not flatten a SafeHtml returned by {@link
+   * #concat(Iterable)} or {@link SafeHtmlBuilder#build()}: its fragments are appended one by one.
+   *
+   * @return {@code out}
+   * @throws IOException if {@code out} throws it
+   */
+  @CanIgnoreReturnValue
+  public static <A extends Appendable> A appendTo(A out, SafeHtml html) throws IOException {
+    html.appendTo(out);
+    return out;
   }
 
   // Default visibility for use by SafeHtmlBuilder.
@@ -277,8 +425,15 @@ public final class SafeHtmls {
   }
 
   private static String htmlEscapeInternal(String text) {
-    return escapeHtmlInternal(coerceToInterchangeValid(text));
+    // Escaping also unicode-coerces, in the same pass.
+    return escapeHtmlInternal(text);
   }
 
+  /**
+   * Concatenations shorter than this are copied into a single string right away: for small
+   * fragments, a copy is cheaper than keeping the parts and flattening them later.
+   */
+  static final int MIN_LAZY_CONCAT_LENGTH = 256;
+
   private SafeHtmls() {}
 }
@@ -819,6 +819,16 @@ public final class SafeStyleBuilder {
     return this;
   }
 
+  /**
+   * Clears all the properties set on this builder so that it can be reused to build another
+   * {@link SafeStyle}, keeping the storage allocated for them.
+   */
+  @CanIgnoreReturnValue
+  public SafeStyleBuilder reset() {
+    properties.clear();
+    return this;
+  }
+
   public SafeStyle build() {
     StringBuilder sb = new StringBuilder();
     if (!properties.isEmpty()) {
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.html.types;
+
+import com.google.common.annotations.GwtCompatible;
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.errorprone.annotations.CheckReturnValue;
+import com.google.errorprone.annotations.CompileTimeConstant;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A reusable configuration for {@link SafeUrls#sanitize(String, Set, SafeUrl)}: the custom schemes
+ * to allow on top of the default safe ones, and the URL to return in place of unsafe ones.
+ *
+ * <p>The schemes are compiled into a matcher once, when the policy is created, so a policy should
+ * be created once and shared, for instance in a static field. Policies are immutable and
+ * thread-safe.
+ *
+ * <pre>{@code
+ * private static final SafeUrlPolicy LINK_POLICY =
+ *     SafeUrlPolicy.create(EnumSet.of(CustomSafeUrlScheme.TEL, CustomSafeUrlScheme.SMS));
+ * ...
+ * SafeUrl href = LINK_POLICY.sanitize(untrustedUrl);
+ * }</pre>
+ */
+@CheckReturnValue
+@GwtCompatible
+@Immutable
+public final class SafeUrlPolicy {
+
+  /** The policy used by {@link SafeUrls#sanitize(String)}: no custom schemes. */
+  public static final SafeUrlPolicy DEFAULT =
+      new SafeUrlPolicy(ImmutableSet.<CustomSafeUrlScheme>of(), SafeUrl.INNOCUOUS);
+
+  private final ImmutableSet<CustomSafeUrlScheme> extraAllowedSchemes;
+  private final SafeUrl innocuous;
+  private final SafeUrls.SchemeTrie schemeTrie;
+
+  private SafeUrlPolicy(ImmutableSet<CustomSafeUrlScheme> extraAllowedSchemes, SafeUrl innocuous) {
+    this.extraAllowedSchemes = extraAllowedSchemes;
+    this.innocuous = innocuous;
+    this.schemeTrie = SafeUrls.schemeTrieFor(extraAllowedSchemes);
+  }
+
+  /**
+   * Creates a policy that additionally permits the custom schemes in {@code extraAllowedSchemes},
+   * and replaces unsafe URLs with {@link SafeUrl#INNOCUOUS}.
+   */
+  public static SafeUrlPolicy create(Set<CustomSafeUrlScheme> extraAllowedSchemes) {
+    return create(extraAllowedSchemes, SafeUrl.INNOCUOUS);
+  }
+
+  /**
+   * Creates a policy that additionally permits the custom schemes in {@code extraAllowedSchemes},
+   * and replaces unsafe URLs with {@code innocuous}.
+   */
+  public static SafeUrlPolicy create(
+      Set<CustomSafeUrlScheme> extraAllowedSchemes, SafeUrl innocuous) {
+    return new SafeUrlPolicy(Sets.immutableEnumSet(extraAllowedSchemes), innocuous);
+  }
+
+  /** Returns the custom schemes this policy permits on top of the default safe schemes. */
+  public ImmutableSet<CustomSafeUrlScheme> getExtraAllowedSchemes() {
+    return extraAllowedSchemes;
+  }
+
+  /** Returns the URL this policy replaces unsafe URLs with. */
+  public SafeUrl getInnocuous() {
+    return innocuous;
+  }
+
+  /**
+   * Sanitizes {@code url} as {@link SafeUrls#sanitize(String, Set, SafeUrl)} does with this
+   * policy's schemes and innocuous URL.
+   */
+  public SafeUrl sanitize(String url) {
+    return SafeUrls.isSafeUrl(url, schemeTrie) ? SafeUrls.create(url) : innocuous;
+  }
+
+  /**
+   * Sanitizes {@code url} as {@link SafeUrls#sanitizeAsString(String, String)} does, additionally
+   * permitting this policy's custom schemes. Unsafe URLs are replaced with {@code
+   * about:invalid#identifier}, not with this policy's innocuous URL.
+   */
+  public String sanitizeAsString(String url, @CompileTimeConstant final String identifier) {
+    return SafeUrls.isSafeUrl(url, schemeTrie) ? url : "about:invalid#" + identifier;
+  }
+
+  /**
+   * Sanitizes each of {@code urls} as {@link SafeUrls#sanitizeAll(List, Set, SafeUrl)} does with
+   * this policy's schemes and innocuous URL.
+   */
+  @GwtIncompatible("ForkJoinPool")
+  public List<SafeUrl> sanitizeAll(List<String> urls) {
+    return SafeUrls.sanitizeAll(urls, schemeTrie, innocuous);
+  }
+}
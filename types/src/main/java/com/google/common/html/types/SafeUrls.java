@@ -18,14 +18,24 @@ package com.google.common.html.types;
 
 
 import com.google.common.annotations.GwtCompatible;
-import com.google.common.io.BaseEncoding;
-import com.google.common.net.UrlEscapers;
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.collect.Sets;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import com.google.errorprone.annotations.CheckReturnValue;
 import com.google.errorprone.annotations.CompileTimeConstant;
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /** Protocol conversions and factory methods for {@link SafeUrl}. */
 @CheckReturnValue
@@ -38,44 +48,58 @@ public final class SafeUrls {
 
   private static final String DATA_SCHEME = "data";
 
-  private static final Set<String> SAFE_DATA_MIME_TYPES =
-      createUnmodifiableSet(
-          // Audio
-          "audio/3gpp2",
-          "audio/3gpp",
-          "audio/aac",
-          "audio/midi",
-          "audio/mp3",
-          "audio/mp4",
-          "audio/mpeg",
-          "audio/oga",
-          "audio/ogg",
-          "audio/opus",
-          "audio/x-m4a",
-          "audio/x-matroska",
-          "audio/x-wav",
-          "audio/wav",
-          "audio/webm",
-          // Image
-          "image/bmp",
-          "image/gif",
-          "image/jpeg",
-          "image/jpg",
-          "image/png",
-          "image/tiff",
-          "image/webp",
-          "image/x-icon",
-          // Video
-          "video/mpeg",
-          "video/mp4",
-          "video/ogg",
-          "video/webm",
-          "video/x-matroska");
+  // Kept as an array so that a MIME type can be looked up in place, without a substring.
+  private static final String[] SAFE_DATA_MIME_TYPES = {
+    // Audio
+    "audio/3gpp2",
+    "audio/3gpp",
+    "audio/aac",
+    "audio/midi",
+    "audio/mp3",
+    "audio/mp4",
+    "audio/mpeg",
+    "audio/oga",
+    "audio/ogg",
+    "audio/opus",
+    "audio/x-m4a",
+    "audio/x-matroska",
+    "audio/x-wav",
+    "audio/wav",
+    "audio/webm",
+    // Image
+    "image/bmp",
+    "image/gif",
+    "image/jpeg",
+    "image/jpg",
+    "image/png",
+    "image/tiff",
+    "image/webp",
+    "image/x-icon",
+    // Video
+    "video/mpeg",
+    "video/mp4",
+    "video/ogg",
+    "video/webm",
+    "video/x-matroska"
+  };
 
   private static final String DATA_BASE64_PREFIX = ";base64,";
 
+  private static final String HTML_DATA_URL_PREFIX = "data:text/html;charset=UTF-8,";
+
+  private static final String HTML_DATA_URL_BASE64_PREFIX = "data:text/html;charset=UTF-8;base64,";
+
   private static final Set<CustomSafeUrlScheme> EMPTY_CUSTOM_SCHEMES = Collections.emptySet();
 
+  private static final SchemeTrie DEFAULT_SCHEME_TRIE = new SchemeTrie(EMPTY_CUSTOM_SCHEMES);
+
+  /**
+   * Scheme tries for the sets of custom schemes seen so far. There are few distinct sets in
+   * practice, so this is never evicted.
+   */
+  private static final ConcurrentMap<Set<CustomSafeUrlScheme>, SchemeTrie> CUSTOM_SCHEME_TRIES =
+      new ConcurrentHashMap<Set<CustomSafeUrlScheme>, SchemeTrie>();
+
   private SafeUrls() {}
 
   private static final Set<String> createUnmodifiableSet(String... schemes) {
@@ -173,6 +197,8 @@ public final class SafeUrls {
   /**
    * Variant of {@link #sanitize(String, SafeUrl)} that additionally permits the custom schemes
    * listed in {@code extraAllowedSchemes}.
+   *
+   * <p>To sanitize many URLs with the same schemes, create a {@link SafeUrlPolicy} once instead.
    */
   public static SafeUrl sanitize(
       String url, Set<CustomSafeUrlScheme> extraAllowedSchemes, SafeUrl innocuous) {
@@ -182,6 +208,109 @@ public final class SafeUrls {
     return create(url);
   }
 
+  /**
+   * Sanitizes each of {@code urls} as {@link #sanitize(String)} does.
+   *
+   * @see #sanitizeAll(List, Set, SafeUrl)
+   */
+  @GwtIncompatible("ForkJoinPool")
+  public static List<SafeUrl> sanitizeAll(List<String> urls) {
+    return sanitizeAll(urls, EMPTY_CUSTOM_SCHEMES, SafeUrl.INNOCUOUS);
+  }
+
+  /**
+   * Sanitizes each of {@code urls} as {@link #sanitize(String, Set, SafeUrl)} does, but resolves
+   * {@code extraAllowedSchemes} only once for the whole batch. Every URL that fails validation is
+   * replaced with the same {@code innocuous} instance.
+   *
+   * <p>Batches of at least {@value #PARALLEL_SANITIZE_THRESHOLD} URLs are split up and sanitized in
+   * parallel, in the caller's {@link ForkJoinPool} if it runs in one, or else in a shared pool.
+   *
+   * @return an unmodifiable list of the sanitized URLs, in the order of {@code urls}
+   */
+  @GwtIncompatible("ForkJoinPool")
+  public static List<SafeUrl> sanitizeAll(
+      List<String> urls, Set<CustomSafeUrlScheme> extraAllowedSchemes, SafeUrl innocuous) {
+    return sanitizeAll(urls, schemeTrieFor(extraAllowedSchemes), innocuous);
+  }
+
+  // Default visibility for use by SafeUrlPolicy.
+  @GwtIncompatible("ForkJoinPool")
+  static List<SafeUrl> sanitizeAll(List<String> urls, SchemeTrie schemeTrie, SafeUrl innocuous) {
+    String[] input = urls.toArray(new String[urls.size()]);
+    SafeUrl[] output = new SafeUrl[input.length];
+    SanitizeTask task = new SanitizeTask(input, output, 0, input.length, schemeTrie, innocuous);
+    if (input.length < PARALLEL_SANITIZE_THRESHOLD) {
+      task.compute();
+    } else if (ForkJoinTask.inForkJoinPool()) {
+      task.invoke();
+    } else {
+      SanitizePool.POOL.invoke(task);
+    }
+    return Collections.unmodifiableList(Arrays.asList(output));
+  }
+
+  /** Batches of URLs at least this large are sanitized in parallel. */
+  @GwtIncompatible("ForkJoinPool")
+  static final int PARALLEL_SANITIZE_THRESHOLD = 4096;
+
+  /** Holds the pool for parallel sanitization, so that it is only started once it is needed. */
+  @GwtIncompatible("ForkJoinPool")
+  private static final class SanitizePool {
+    // This library targets Java 7, which has no ForkJoinPool.commonPool() to share. Callers that
+    // already run in a pool, including the common pool on Java 8+, use it instead of this one (see
+    // sanitizeAll). This pool is only created by the first large batch sanitized outside any pool.
+    // Its threads are daemon threads, which it retires when idle, so it never keeps the JVM from
+    // exiting and needs no shutdown.
+    static final ForkJoinPool POOL = new ForkJoinPool();
+  }
+
+  /** Sanitizes a range of a batch of URLs, splitting it in halves until it is small enough. */
+  @GwtIncompatible("ForkJoinPool")
+  private static final class SanitizeTask extends RecursiveAction {
+    private static final long serialVersionUID = 0L;
+
+    /** Ranges of at most this many URLs are sanitized sequentially. */
+    private static final int MAX_SEQUENTIAL_LENGTH = 1024;
+
+    private final String[] input;
+    private final SafeUrl[] output;
+    private final int start;
+    private final int end;
+    private final SchemeTrie schemeTrie;
+    private final SafeUrl innocuous;
+
+    SanitizeTask(
+        String[] input,
+        SafeUrl[] output,
+        int start,
+        int end,
+        SchemeTrie schemeTrie,
+        SafeUrl innocuous) {
+      this.input = input;
+      this.output = output;
+      this.start = start;
+      this.end = end;
+      this.schemeTrie = schemeTrie;
+      this.innocuous = innocuous;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start > MAX_SEQUENTIAL_LENGTH) {
+        int middle = (start + end) >>> 1;
+        invokeAll(
+            new SanitizeTask(input, output, start, middle, schemeTrie, innocuous),
+            new SanitizeTask(input, output, middle, end, schemeTrie, innocuous));
+        return;
+      }
+      for (int i = start; i < end; i++) {
+        String url = input[i];
+        output[i] = isSafeUrl(url, schemeTrie) ? create(url) : innocuous;
+      }
+    }
+  }
+
   /**
    * Sanitizes the given {@code url}, validating that the input string matches a pattern of commonly
    * used safe URLs. If {@code url} fails validation, this method returns {@code
@@ -213,12 +342,46 @@ public final class SafeUrls {
    * @see https://developer.mozilla.org/en-US/docs/Web/HTTP/data_URIs
    */
   public static SafeUrl createHtmlDataUrl(SafeHtml html) {
-    // Use urlPathSegmentEscaper because all other Escapers convert spaces to "+" instead of "%20",
-    // which are rendered as normal "+"s in the browser instead of being rendered as spaces.
-    String dataUrl =
-        "data:text/html;charset=UTF-8,"
-            + UrlEscapers.urlPathSegmentEscaper().escape(html.getSafeHtmlString());
-    return create(dataUrl);
+    // Percent-encode as urlPathSegmentEscaper does, because all other Escapers convert spaces to
+    // "+" instead of "%20", which are rendered as normal "+"s in the browser instead of being
+    // rendered as spaces.
+    String htmlString = html.getSafeHtmlString();
+    long length = HTML_DATA_URL_PREFIX.length() + Utf8PercentEncoder.encodedLength(htmlString);
+    if (length > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("SafeHtml is too large for a data: URL");
+    }
+    StringBuilder dataUrl = new StringBuilder((int) length).append(HTML_DATA_URL_PREFIX);
+    Utf8PercentEncoder encoder = new Utf8PercentEncoder(dataUrl);
+    try {
+      encoder.append(htmlString);
+      encoder.finish();
+    } catch (IOException e) {
+      // Should never happen, StringBuilder does not throw.
+      throw new RuntimeException(e);
+    }
+    return create(dataUrl.toString());
+  }
+
+  /**
+   * Appends the URL that {@link #createHtmlDataUrl(SafeHtml)} would create to {@code out},
+   * streaming it in chunks rather than building it in memory first.
+   *
+   * <p>The appended URL conforms to the {@link SafeUrl} contract, so it may be written wherever a
+   * {@link SafeUrl} could be.
+   *
+   * @return {@code out}
+   * @throws IOException if {@code out} throws it
+   * @throws IllegalArgumentException if {@code html} contains an unpaired surrogate, in which case
+   *     part of the URL may already have been appended
+   */
+  @CanIgnoreReturnValue
+  public static <A extends Appendable> A appendHtmlDataUrl(A out, SafeHtml html)
+      throws IOException {
+    out.append(HTML_DATA_URL_PREFIX);
+    Utf8PercentEncoder encoder = new Utf8PercentEncoder(out);
+    html.appendTo(encoder);
+    encoder.finish();
+    return out;
   }
 
   /**
@@ -232,16 +395,101 @@ public final class SafeUrls {
    * @see https://developer.mozilla.org/en-US/docs/Web/HTTP/data_URIs
    */
   public static SafeUrl createHtmlDataUrlBase64(SafeHtml html) {
+    String htmlString = html.getSafeHtmlString();
+    long length =
+        HTML_DATA_URL_BASE64_PREFIX.length()
+            + Utf8Base64Encoder.base64Length(Utf8Base64Encoder.utf8Length(htmlString));
+    if (length > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("SafeHtml is too large for a data: URL");
+    }
+    // Transcode straight into a buffer of the exact final size, rather than building the UTF-8
+    // bytes and their base-64 encoding as intermediate copies.
+    StringBuilder dataUrl = new StringBuilder((int) length).append(HTML_DATA_URL_BASE64_PREFIX);
+    Utf8Base64Encoder encoder = new Utf8Base64Encoder(dataUrl);
     try {
-      String dataUrl =
-          "data:text/html;charset=UTF-8;base64,"
-              + BaseEncoding.base64().encode(html.getSafeHtmlString().getBytes("UTF-8"));
-      return create(dataUrl);
-    } catch (UnsupportedEncodingException e) {
-      // Should never happen.  We use getBytes(String) instead of getBytes(CharSet) because
-      // there's no java.nio.charset.StandardCharsets in older Android SDKs.
+      encoder.append(htmlString);
+      encoder.finish();
+    } catch (IOException e) {
+      // Should never happen, StringBuilder does not throw.
       throw new RuntimeException(e);
     }
+    return create(dataUrl.toString());
+  }
+
+  /**
+   * Appends the URL that {@link #createHtmlDataUrlBase64(SafeHtml)} would create to {@code out},
+   * streaming it in chunks rather than building it in memory first.
+   *
+   * <p>The appended URL conforms to the {@link SafeUrl} contract, so it may be written wherever a
+   * {@link SafeUrl} could be.
+   *
+   * @return {@code out}
+   * @throws IOException if {@code out} throws it
+   */
+  @CanIgnoreReturnValue
+  public static <A extends Appendable> A appendHtmlDataUrlBase64(A out, SafeHtml html)
+      throws IOException {
+    out.append(HTML_DATA_URL_BASE64_PREFIX);
+    Utf8Base64Encoder encoder = new Utf8Base64Encoder(out);
+    html.appendTo(encoder);
+    encoder.finish();
+    return out;
+  }
+
+  /**
+   * Writes the URL that {@link #createHtmlDataUrlBase64(SafeHtml)} would create to {@code out} as
+   * ASCII bytes, streaming it in chunks rather than building it in memory first.
+   *
+   * @throws IOException if {@code out} throws it
+   */
+  @GwtIncompatible("WritableByteChannel")
+  public static void writeHtmlDataUrlBase64(WritableByteChannel out, SafeHtml html)
+      throws IOException {
+    AsciiChannelAppendable channelAppendable = new AsciiChannelAppendable(out);
+    appendHtmlDataUrlBase64(channelAppendable, html);
+    channelAppendable.flush();
+  }
+
+  /** Writes the chars appended to it to a channel, as ASCII bytes. */
+  @GwtIncompatible("WritableByteChannel")
+  private static final class AsciiChannelAppendable implements Appendable {
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(8192);
+
+    AsciiChannelAppendable(WritableByteChannel channel) {
+      this.channel = channel;
+    }
+
+    @Override
+    public Appendable append(CharSequence csq) throws IOException {
+      return append(csq, 0, csq.length());
+    }
+
+    @Override
+    public Appendable append(CharSequence csq, int start, int end) throws IOException {
+      for (int i = start; i < end; i++) {
+        append(csq.charAt(i));
+      }
+      return this;
+    }
+
+    @Override
+    public Appendable append(char c) throws IOException {
+      // Only ever called with the ASCII output of a base-64 data: URL.
+      if (!buffer.hasRemaining()) {
+        flush();
+      }
+      buffer.put((byte) c);
+      return this;
+    }
+
+    void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
   }
 
   /**
@@ -259,36 +507,22 @@ public final class SafeUrls {
    * </ul>
    *
    * <p>We don't use a regex so that we don't need to depend on GWT, which does not support Java's
-   * Pattern and requires using its RegExp class.
+   * Pattern and requires using its RegExp class. Schemes are matched ASCII case-insensitively, in
+   * place, by a {@link SchemeTrie}.
    */
   private static boolean isSafeUrl(String url, Set<CustomSafeUrlScheme> extraAllowedSchemes) {
-    String lowerCased = url.toLowerCase();
-
-    // If some Unicode character lower cases to something that ends up matching these ASCII ones,
-    // it's harmless.
-    for (String scheme : DEFAULT_SAFE_SCHEMES) {
-      if (lowerCased.startsWith(scheme + ":")) {
-        return true;
-      }
-    }
-
-    // Some data URLs are harmless, check if this is one of those.
-    if (lowerCased.startsWith(DATA_SCHEME + ":")) {
-      return isSafeDataUrl(url);
-    }
+    return isSafeUrl(url, schemeTrieFor(extraAllowedSchemes));
+  }
 
-    for (CustomSafeUrlScheme scheme : extraAllowedSchemes) {
-      /**
-       * For "-" in a custom URL scheme, it's not possible to write a proto enum with "-" in the
-       * field name. In proto, it has to be "_". But we can safely convert all "_" in the proto name
-       * to "-", since according to the URL Living Standard, a URL-scheme string must be one ASCII
-       * alpha, followed by zero or more of ASCII alphanumeric, "+", "-", and ".".
-       *
-       * @see https://url.spec.whatwg.org/#url-syntax
-       */
-      if (lowerCased.startsWith(scheme.name().toLowerCase().replace('_', '-') + ":")) {
+  static boolean isSafeUrl(String url, SchemeTrie schemeTrie) {
+    switch (schemeTrie.match(url)) {
+      case SchemeTrie.SAFE:
         return true;
-      }
+      case SchemeTrie.DATA:
+        // Some data URLs are harmless, check if this is one of those.
+        return isSafeDataUrl(url);
+      default:
+        break;
     }
 
     for (int i = 0; i < url.length(); i++) {
@@ -310,36 +544,156 @@ public final class SafeUrls {
     return true;
   }
 
+  /**
+   * Returns the trie matching the default safe schemes, {@code data} and {@code
+   * extraAllowedSchemes}, building and caching it on first use of each distinct set.
+   */
+  static SchemeTrie schemeTrieFor(Set<CustomSafeUrlScheme> extraAllowedSchemes) {
+    if (extraAllowedSchemes.isEmpty()) {
+      return DEFAULT_SCHEME_TRIE;
+    }
+    SchemeTrie trie = CUSTOM_SCHEME_TRIES.get(extraAllowedSchemes);
+    if (trie == null) {
+      trie = new SchemeTrie(extraAllowedSchemes);
+      // Key on a copy, so that later changes to the caller's set cannot corrupt the cache.
+      CUSTOM_SCHEME_TRIES.put(Sets.immutableEnumSet(extraAllowedSchemes), trie);
+    }
+    return trie;
+  }
+
+  /**
+   * A trie of URL schemes, matched ASCII case-insensitively against the start of a URL without
+   * copying or lower-casing it.
+   */
+  static final class SchemeTrie {
+    static final int NONE = 0;
+    static final int SAFE = 1;
+    static final int DATA = 2;
+
+    /** Number of distinct characters in a scheme: [a-z0-9+.-]. */
+    private static final int ALPHABET_SIZE = 26 + 10 + 3;
+
+    private final SchemeTrie[] children = new SchemeTrie[ALPHABET_SIZE];
+    private int result = NONE;
+
+    private SchemeTrie() {}
+
+    SchemeTrie(Set<CustomSafeUrlScheme> extraAllowedSchemes) {
+      for (String scheme : DEFAULT_SAFE_SCHEMES) {
+        add(scheme, SAFE);
+      }
+      // data: is added before the custom schemes so that it keeps its own validation.
+      add(DATA_SCHEME, DATA);
+      for (CustomSafeUrlScheme scheme : extraAllowedSchemes) {
+        /**
+         * For "-" in a custom URL scheme, it's not possible to write a proto enum with "-" in the
+         * field name. In proto, it has to be "_". But we can safely convert all "_" in the proto
+         * name to "-", since according to the URL Living Standard, a URL-scheme string must be one
+         * ASCII alpha, followed by zero or more of ASCII alphanumeric, "+", "-", and ".".
+         *
+         * @see https://url.spec.whatwg.org/#url-syntax
+         */
+        add(scheme.name().replace('_', '-'), SAFE);
+      }
+    }
+
+    private void add(String scheme, int schemeResult) {
+      SchemeTrie node = this;
+      for (int i = 0; i < scheme.length(); i++) {
+        int index = indexOf(scheme.charAt(i));
+        if (index < 0) {
+          throw new IllegalArgumentException("Invalid URL scheme: " + scheme);
+        }
+        if (node.children[index] == null) {
+          node.children[index] = new SchemeTrie();
+        }
+        node = node.children[index];
+      }
+      if (node.result == NONE) {
+        node.result = schemeResult;
+      }
+    }
+
+    /**
+     * Returns {@link #SAFE} or {@link #DATA} if {@code url} starts with one of the schemes in this
+     * trie followed by a colon, or {@link #NONE} otherwise.
+     */
+    int match(String url) {
+      SchemeTrie node = this;
+      for (int i = 0; i < url.length(); i++) {
+        char c = url.charAt(i);
+        if (c == ':') {
+          return node.result;
+        }
+        int index = indexOf(c);
+        if (index < 0) {
+          return NONE;
+        }
+        node = node.children[index];
+        if (node == null) {
+          return NONE;
+        }
+      }
+      return NONE;
+    }
+
+    /** Returns the child index of {@code c}, folding ASCII case, or -1 if not a scheme char. */
+    private static int indexOf(char c) {
+      if ('a' <= c && c <= 'z') {
+        return c - 'a';
+      }
+      if ('A' <= c && c <= 'Z') {
+        return c - 'A';
+      }
+      if ('0' <= c && c <= '9') {
+        return 26 + c - '0';
+      }
+      switch (c) {
+        case '+':
+          return 36;
+        case '-':
+          return 37;
+        case '.':
+          return 38;
+        default:
+          return -1;
+      }
+    }
+  }
+
   /**
    * Check if the provided URL is a safe data: URL.
    *
    * <p>This function is implemented without regexes to make it compatible with GWT, which does not
    * support the Pattern API and requires to use their RegExp class instead.
+   *
+   * <p>Data URLs can be hundreds of kilobytes, so {@code url} is validated in place, comparing
+   * ASCII case-insensitively, rather than on a lower-cased copy.
    */
   private static boolean isSafeDataUrl(String url) {
-    String lowerCased = url.toLowerCase();
+    int length = url.length();
     int pos = 0;
 
     // Make sure that the string starts with "data:" and contains at least one more character.
-    if (!lowerCased.startsWith(DATA_SCHEME + ":")) {
+    if (!startsWithIgnoreAsciiCase(url, pos, DATA_SCHEME + ":")) {
       return false;
     }
     pos += DATA_SCHEME.length() + 1;
 
-    if (pos >= lowerCased.length()) {
+    if (pos >= length) {
       return false;
     }
 
     // Read the MIME type, which comes after the data: scheme and check if it's allowed.
     int mimeStartPos = pos;
-    for (; pos < lowerCased.length(); ++pos) {
-      char c = lowerCased.charAt(pos);
+    for (; pos < length; ++pos) {
+      char c = url.charAt(pos);
       if (c == ';' || c == ',') {
         break;
       }
     }
 
-    if (!SAFE_DATA_MIME_TYPES.contains(lowerCased.substring(mimeStartPos, pos))) {
+    if (!isSafeDataMimeType(url, mimeStartPos, pos)) {
       return false;
     }
 
@@ -348,32 +702,23 @@ public final class SafeUrls {
     // mime-types in our allowlist.
     // If that were to change, we would need to allow non-base64 bodies, and/or allow
     // a base64 body along with an explicit charset.
-    if (!lowerCased.startsWith(DATA_BASE64_PREFIX, pos)) {
+    if (!startsWithIgnoreAsciiCase(url, pos, DATA_BASE64_PREFIX)) {
       return false;
     }
     pos += DATA_BASE64_PREFIX.length();
 
     // This has the effect of disallowing empty bodies which is fine for the set
     // of allowed mime-types.
-    if (pos >= lowerCased.length()) {
+    if (pos >= length) {
       return false;
     }
 
     // Check that the data is encoded using the base64 alphabet, [a-zA-Z0-9+/]
-    for (; pos < lowerCased.length(); ++pos) {
-      char c = lowerCased.charAt(pos);
-      if (c == '=') {
-        break;
-      }
-      // We only check [a-z] since the string has been lowercased.
-      if (!('a' <= c && c <= 'z') && !('0' <= c && c <= '9') && c != '+' && c != '/') {
-        return false;
-      }
-    }
+    pos = skipBase64Alphabet(url, pos);
 
     // The trailing part of the URL may only contain base64 padding characters.
-    for (; pos < lowerCased.length(); ++pos) {
-      if (lowerCased.charAt(pos) != '=') {
+    for (; pos < length; ++pos) {
+      if (url.charAt(pos) != '=') {
         return false;
       }
     }
@@ -382,6 +727,89 @@ public final class SafeUrls {
     return true;
   }
 
+  /** Whether {@code url.substring(start, end)} is one of {@link #SAFE_DATA_MIME_TYPES}. */
+  private static boolean isSafeDataMimeType(String url, int start, int end) {
+    for (String mimeType : SAFE_DATA_MIME_TYPES) {
+      if (mimeType.length() == end - start && startsWithIgnoreAsciiCase(url, start, mimeType)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Whether {@code s} contains {@code lowerCasePrefix} at {@code offset}, ignoring ASCII case.
+   * Unlike {@link String#regionMatches(boolean, int, String, int, int)}, non-ASCII characters never
+   * match, even if they case-fold to an ASCII one.
+   */
+  private static boolean startsWithIgnoreAsciiCase(String s, int offset, String lowerCasePrefix) {
+    int prefixLength = lowerCasePrefix.length();
+    if (offset + prefixLength > s.length()) {
+      return false;
+    }
+    for (int i = 0; i < prefixLength; i++) {
+      char c = s.charAt(offset + i);
+      if ('A' <= c && c <= 'Z') {
+        c += 'a' - 'A';
+      }
+      if (c != lowerCasePrefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Which ASCII characters are in the base64 alphabet, [a-zA-Z0-9+/]. */
+  private static final boolean[] BASE64_ALPHABET = new boolean[128];
+
+  static {
+    for (char c = 'a'; c <= 'z'; c++) {
+      BASE64_ALPHABET[c] = true;
+      BASE64_ALPHABET[c - 'a' + 'A'] = true;
+    }
+    for (char c = '0'; c <= '9'; c++) {
+      BASE64_ALPHABET[c] = true;
+    }
+    BASE64_ALPHABET['+'] = true;
+    BASE64_ALPHABET['/'] = true;
+  }
+
+  /**
+   * Returns the index of the first character at or after {@code pos} in {@code s} that is not in
+   * the base64 alphabet, or {@code s.length()} if there is none.
+   *
+   * <p>This is the hot loop for large inline images, so the bulk of the body is checked eight
+   * characters at a time with a single branch per block. The first block that fails, and the tail,
+   * are rescanned one character at a time to find the exact position.
+   */
+  private static int skipBase64Alphabet(String s, int pos) {
+    int length = s.length();
+    boolean[] alphabet = BASE64_ALPHABET;
+    for (; pos + 8 <= length; pos += 8) {
+      char c0 = s.charAt(pos);
+      char c1 = s.charAt(pos + 1);
+      char c2 = s.charAt(pos + 2);
+      char c3 = s.charAt(pos + 3);
+      char c4 = s.charAt(pos + 4);
+      char c5 = s.charAt(pos + 5);
+      char c6 = s.charAt(pos + 6);
+      char c7 = s.charAt(pos + 7);
+      // Rule out non-ASCII characters first, so that the table lookups stay in bounds.
+      if (((c0 | c1 | c2 | c3 | c4 | c5 | c6 | c7) & ~0x7f) != 0
+          || !(alphabet[c0] & alphabet[c1] & alphabet[c2] & alphabet[c3]
+              & alphabet[c4] & alphabet[c5] & alphabet[c6] & alphabet[c7])) {
+        break;
+      }
+    }
+    for (; pos < length; pos++) {
+      char c = s.charAt(pos);
+      if (c > 0x7f || !alphabet[c]) {
+        return pos;
+      }
+    }
+    return length;
+  }
+
   /**
    * Creates a SafeUrl by doing an unchecked conversion from the given {@code url}. Also called from
    * SafeUrlBuilder.
@@ -2,7 +2,9 @@ package com.google.common.html.types;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import com.google.errorprone.annotations.CheckReturnValue;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -240,6 +242,15 @@ public final class SpliceableSafeHtml {
     return SafeHtmls.concat(htmls);
   }
 
+  /**
+   * Compiles this template for repeated rendering. Placeholder labels are resolved to integer
+   * slots once, so that {@link Compiled#render(SafeHtml...)} needs no map lookups and can size its
+   * output exactly.
+   */
+  public Compiled compile() {
+    return new Compiled(this.segments);
+  }
+
   /**
    * Renders the template with each insertion point denoted by its own name in an html comment
    * block.
@@ -253,6 +264,152 @@ public final class SpliceableSafeHtml {
     return spliceAll(substitutions).getSafeHtmlString();
   }
 
+  /**
+   * A {@link SpliceableSafeHtml} whose placeholders have been resolved to slots, numbered in order
+   * of the first appearance of their label. A label that appears several times maps to a single
+   * slot. Adjacent SafeHtml segments are merged, and their lengths are precomputed.
+   *
+   * <p>Instances are immutable and can be shared and rendered concurrently.
+   */
+  @Immutable
+  public static final class Compiled {
+    /** Static SafeHtml for each merged segment, or null where a slot is to be inserted. */
+    private final SafeHtml[] staticSegments;
+    /** Slot to insert for each segment whose static SafeHtml is null, or -1. */
+    private final int[] segmentSlots;
+    /** Placeholder label of each slot, in slot order. */
+    private final List<String> slotLabels;
+    /** Total length of the static segments. */
+    private final int staticLength;
+
+    private Compiled(List<Segment> segments) {
+      List<SafeHtml> statics = new ArrayList<>();
+      List<Integer> slots = new ArrayList<>();
+      List<String> labels = new ArrayList<>();
+      List<SafeHtml> pendingStatics = new ArrayList<>();
+      int staticLength = 0;
+      for (Segment segment : segments) {
+        SafeHtml safeHtml = segment.getSafeHtml();
+        if (safeHtml != null) {
+          pendingStatics.add(safeHtml);
+          staticLength += safeHtml.length();
+          continue;
+        }
+        if (!pendingStatics.isEmpty()) {
+          statics.add(SafeHtmls.concat(pendingStatics));
+          slots.add(-1);
+          pendingStatics.clear();
+        }
+        String label = checkNotNull(segment.getPlaceholderLabel());
+        int slot = labels.indexOf(label);
+        if (slot < 0) {
+          slot = labels.size();
+          labels.add(label);
+        }
+        statics.add(null);
+        slots.add(slot);
+      }
+      if (!pendingStatics.isEmpty()) {
+        statics.add(SafeHtmls.concat(pendingStatics));
+        slots.add(-1);
+      }
+
+      this.staticSegments = statics.toArray(new SafeHtml[statics.size()]);
+      this.segmentSlots = new int[slots.size()];
+      for (int i = 0; i < segmentSlots.length; i++) {
+        segmentSlots[i] = slots.get(i);
+      }
+      this.slotLabels = Collections.unmodifiableList(labels);
+      this.staticLength = staticLength;
+    }
+
+    /** @return The placeholder labels, indexed by slot. */
+    public List<String> getSlotLabels() {
+      return slotLabels;
+    }
+
+    /**
+     * @return The slot of the given placeholder label.
+     * @throws IllegalArgumentException if the template has no placeholder with that label.
+     */
+    public int getSlot(String placeholderLabel) {
+      int slot = slotLabels.indexOf(placeholderLabel);
+      if (slot < 0) {
+        throw new IllegalArgumentException("No placeholder " + placeholderLabel);
+      }
+      return slot;
+    }
+
+    /**
+     * Renders the template, inserting {@code slots[i]} wherever the placeholder for slot {@code i}
+     * appears. To leave a placeholder empty, pass {@link SafeHtml#EMPTY} for its slot.
+     *
+     * @param slots SafeHtml to insert for each slot, in the order of {@link #getSlotLabels()}.
+     * @return The single, merged SafeHtml.
+     * @throws IllegalArgumentException if {@code slots} does not have exactly one non-null value
+     *     per slot.
+     */
+    public SafeHtml render(SafeHtml... slots) {
+      checkSlots(slots);
+      SafeHtml[] parts = new SafeHtml[staticSegments.length];
+      long length = staticLength;
+      for (int i = 0; i < parts.length; i++) {
+        SafeHtml part = staticSegments[i];
+        if (part == null) {
+          part = slots[segmentSlots[i]];
+          length += part.length();
+        }
+        parts[i] = part;
+      }
+      if (parts.length == 0) {
+        return SafeHtml.EMPTY;
+      }
+      if (parts.length == 1) {
+        return parts[0];
+      }
+      if (length < SafeHtmls.MIN_LAZY_CONCAT_LENGTH) {
+        StringBuilder sb = new StringBuilder((int) length);
+        for (SafeHtml part : parts) {
+          sb.append(part.getSafeHtmlString());
+        }
+        return SafeHtmls.create(sb.toString());
+      }
+      return new SafeHtml(parts);
+    }
+
+    /**
+     * Renders the template as {@link #render(SafeHtml...)} does, appending the result straight to
+     * {@code out}.
+     *
+     * @return {@code out}
+     * @throws IOException if {@code out} throws it
+     * @throws IllegalArgumentException if {@code slots} does not have exactly one non-null value
+     *     per slot.
+     */
+    @CanIgnoreReturnValue
+    public <A extends Appendable> A renderTo(A out, SafeHtml... slots) throws IOException {
+      checkSlots(slots);
+      for (int i = 0; i < staticSegments.length; i++) {
+        SafeHtml part = staticSegments[i];
+        SafeHtmls.appendTo(out, part != null ? part : slots[segmentSlots[i]]);
+      }
+      return out;
+    }
+
+    private void checkSlots(SafeHtml[] slots) {
+      if (slots.length != slotLabels.size()) {
+        throw new IllegalArgumentException(
+            "Expected " + slotLabels.size() + " slots, got " + slots.length);
+      }
+      for (int i = 0; i < slots.length; i++) {
+        if (slots[i] == null) {
+          throw new IllegalArgumentException(
+              "Assignment missing for placeholder " + slotLabels.get(i));
+        }
+      }
+    }
+  }
+
   /**
    * Element in the sequence of segments that make up a SafeHtml template. Can be one of constant
    * SafeHtml content or a placeholder label for insertion.
@@ -38,6 +38,13 @@ import javax.annotation.concurrent.NotThreadSafe;
 public final class TrustedResourceUrlBuilder {
   private final StringBuilder url = new StringBuilder();
 
+  /**
+   * Length of {@link #url} when its prefix was last found to be valid, or -1. Appending to a valid
+   * URL keeps it valid unless a line terminator is appended, so later checks only need to look at
+   * what was appended since.
+   */
+  private int validatedLength = -1;
+
   /**
    * Creates a new builder, with an underlying URL set to the given compile-time constant {@code
    * string}.
@@ -49,6 +56,7 @@ public final class TrustedResourceUrlBuilder {
   public TrustedResourceUrlBuilder(@CompileTimeConstant final String string) {
     checkBaseUrl(string);
     url.append(string);
+    validatedLength = url.length();
   }
 
   /**
@@ -61,6 +69,7 @@ public final class TrustedResourceUrlBuilder {
     String urlString = trustedResourceUrl.getTrustedResourceUrlString();
     checkBaseUrl(urlString);
     url.append(urlString);
+    validatedLength = url.length();
   }
 
   // Constructor for factory methods.
@@ -92,8 +101,12 @@ public final class TrustedResourceUrlBuilder {
    */
   @CanIgnoreReturnValue
   public TrustedResourceUrlBuilder appendEncoded(final String string) {
-    checkBaseUrl(url.toString());
+    if (validatedLength < 0 || indexOfLineTerminator(url, validatedLength) >= 0) {
+      checkBaseUrl(url);
+    }
     url.append(UrlEscapers.urlFormParameterEscaper().escape(string));
+    // The escaped string contains no line terminators.
+    validatedLength = url.length();
     return this;
   }
 
@@ -142,17 +155,18 @@ public final class TrustedResourceUrlBuilder {
   // Modelled on javascript/closure/html/trustedresourceurl.js
   // Note that all of these prefixes can only be constructed from flags/compile-time-constants
   // because / characters get URL encoded.
-  // We cannot precompile this regex because of GWT.
-  private static final String BASE_URL_REGEX =
-      "^((https:)?//[0-9A-Za-z.:\\[\\]-]+/" // Origin.
-          + "|/[^/\\\\]" // Absolute path.
-          + "|[^:/\\\\]+/" // Relative path.
-          + "|[^:/\\\\]*[?#]" // Query string or fragment.
-          + "|about:blank#" // about:blank with fragment.
-          + ").*";
-
-  private static void checkBaseUrl(@Nullable String baseUrl) {
-    if (!checkNotNull(baseUrl).matches(BASE_URL_REGEX)) {
+  // isValidBaseUrl() matches this regex by hand: we cannot precompile it because of GWT, and
+  // String.matches() would compile it again on every call.
+  //
+  //   "^((https:)?//[0-9A-Za-z.:\\[\\]-]+/" // Origin.
+  //       + "|/[^/\\\\]" // Absolute path.
+  //       + "|[^:/\\\\]+/" // Relative path.
+  //       + "|[^:/\\\\]*[?#]" // Query string or fragment.
+  //       + "|about:blank#" // about:blank with fragment.
+  //       + ").*"
+
+  private static void checkBaseUrl(@Nullable CharSequence baseUrl) {
+    if (!isValidBaseUrl(checkNotNull(baseUrl))) {
       throw new IllegalArgumentException(
           "TrustedResourceUrls must have a prefix that sets the scheme and "
               + "origin, e.g. \"//google.com/\" or \"/path\", got:"
@@ -160,6 +174,97 @@ public final class TrustedResourceUrlBuilder {
     }
   }
 
+  /**
+   * Returns whether {@code url} matches the regex above: one of the allowed prefixes must end at or
+   * after the last line terminator, because {@code .*} does not match line terminators.
+   */
+  private static boolean isValidBaseUrl(CharSequence url) {
+    int length = url.length();
+    int minPrefixEnd = 0;
+    for (int i = length - 1; i >= 0; i--) {
+      if (isLineTerminator(url.charAt(i))) {
+        minPrefixEnd = i + 1;
+        break;
+      }
+    }
+
+    // Origin.
+    int originStart = startsWith(url, 0, "https://") ? 8 : startsWith(url, 0, "//") ? 2 : -1;
+    if (originStart >= 0) {
+      int i = originStart;
+      while (i < length && isOriginChar(url.charAt(i))) {
+        i++;
+      }
+      if (i > originStart && i < length && url.charAt(i) == '/' && i + 1 >= minPrefixEnd) {
+        return true;
+      }
+    }
+
+    // Absolute path.
+    if (length >= 2 && url.charAt(0) == '/' && url.charAt(1) != '/' && url.charAt(1) != '\\'
+        && 2 >= minPrefixEnd) {
+      return true;
+    }
+
+    // Relative path, and query string or fragment: the prefix may not contain any of ":/\\" except
+    // for the "/" that ends a relative path.
+    int lastQueryOrFragment = -1;
+    for (int i = 0; i < length; i++) {
+      char c = url.charAt(i);
+      if (c == '?' || c == '#') {
+        lastQueryOrFragment = i;
+      } else if (c == ':' || c == '/' || c == '\\') {
+        if (c == '/' && i > 0 && i + 1 >= minPrefixEnd) {
+          return true;
+        }
+        break;
+      }
+    }
+    if (lastQueryOrFragment >= 0 && lastQueryOrFragment + 1 >= minPrefixEnd) {
+      return true;
+    }
+
+    // about:blank with fragment.
+    return startsWith(url, 0, "about:blank#") && 12 >= minPrefixEnd;
+  }
+
+  private static boolean isOriginChar(char c) {
+    return ('0' <= c && c <= '9')
+        || ('A' <= c && c <= 'Z')
+        || ('a' <= c && c <= 'z')
+        || c == '.'
+        || c == ':'
+        || c == '['
+        || c == ']'
+        || c == '-';
+  }
+
+  /** Line terminators as defined by java.util.regex.Pattern, which {@code .} does not match. */
+  private static boolean isLineTerminator(char c) {
+    return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+  }
+
+  private static int indexOfLineTerminator(CharSequence s, int from) {
+    for (int i = from; i < s.length(); i++) {
+      if (isLineTerminator(s.charAt(i))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean startsWith(CharSequence s, int offset, String prefix) {
+    if (s.length() - offset < prefix.length()) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); i++) {
+      if (s.charAt(offset + i) != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /** Returns the TrustedResourceUrl built so far. */
   public TrustedResourceUrl build() {
     return TrustedResourceUrls.create(url.toString());
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.html.types;
+
+import com.google.common.annotations.GwtCompatible;
+import java.io.IOException;
+import javax.annotation.Nullable;
+
+/**
+ * Encodes the chars appended to it as UTF-8, and those bytes as padded base64, without ever
+ * materializing the UTF-8 bytes.
+ *
+ * <p>The output is identical to {@code BaseEncoding.base64().encode(s.getBytes("UTF-8"))},
+ * including the replacement of unpaired surrogates with {@code '?'}. Call {@link #finish()} once
+ * all input has been appended to write the final, padded group.
+ */
+@GwtCompatible
+final class Utf8Base64Encoder implements Appendable {
+
+  private static final char[] ALPHABET =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+  /** How many chars are buffered before they are flushed to a streaming output. */
+  private static final int CHUNK_SIZE = 4096;
+
+  /** Output used by {@link String#getBytes} for chars that are not valid UTF-16. */
+  private static final int REPLACEMENT_BYTE = '?';
+
+  private final StringBuilder buffer;
+  @Nullable private final Appendable flushTo;
+
+  /** Up to two bytes that do not yet make a full three-byte group, most significant first. */
+  private int pendingBits;
+  private int pendingByteCount;
+
+  /** A high surrogate whose low surrogate may come with the next append. */
+  private char pendingHighSurrogate;
+
+  /** Creates an encoder that writes everything into {@code out}, which should be presized. */
+  Utf8Base64Encoder(StringBuilder out) {
+    this.buffer = out;
+    this.flushTo = null;
+  }
+
+  /** Creates an encoder that streams its output to {@code out} in chunks. */
+  Utf8Base64Encoder(Appendable out) {
+    this.buffer = new StringBuilder(CHUNK_SIZE + 4);
+    this.flushTo = out;
+  }
+
+  /** Returns the number of bytes {@code s} takes in UTF-8, as {@link String#getBytes} encodes it. */
+  static long utf8Length(CharSequence s) {
+    int length = s.length();
+    long utf8Length = length;
+    for (int i = 0; i < length; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        continue;
+      }
+      if (c < 0x800) {
+        utf8Length += 1;
+      } else if (Character.isHighSurrogate(c)) {
+        if (i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+          // Four bytes for the two chars of the pair.
+          utf8Length += 2;
+          i++;
+        }
+        // Unpaired surrogates are replaced by a single byte.
+      } else if (!Character.isLowSurrogate(c)) {
+        utf8Length += 2;
+      }
+    }
+    return utf8Length;
+  }
+
+  /** Returns the number of chars in the padded base64 encoding of {@code byteCount} bytes. */
+  static long base64Length(long byteCount) {
+    return (byteCount + 2) / 3 * 4;
+  }
+
+  @Override
+  public Utf8Base64Encoder append(CharSequence csq) throws IOException {
+    return append(csq, 0, csq.length());
+  }
+
+  @Override
+  public Utf8Base64Encoder append(CharSequence csq, int start, int end) throws IOException {
+    int i = start;
+    while (i < end) {
+      // Fast path: three ASCII chars make exactly one group of four base64 chars.
+      if (pendingByteCount == 0 && pendingHighSurrogate == 0) {
+        while (i + 3 <= end) {
+          char c0 = csq.charAt(i);
+          char c1 = csq.charAt(i + 1);
+          char c2 = csq.charAt(i + 2);
+          if ((c0 | c1 | c2) >= 0x80) {
+            break;
+          }
+          writeGroup((c0 << 16) | (c1 << 8) | c2);
+          i += 3;
+        }
+        if (i == end) {
+          break;
+        }
+      }
+      encodeChar(csq.charAt(i++));
+    }
+    return this;
+  }
+
+  @Override
+  public Utf8Base64Encoder append(char c) throws IOException {
+    encodeChar(c);
+    return this;
+  }
+
+  /** Writes out any pending input, padding the last group, and flushes a streaming output. */
+  void finish() throws IOException {
+    if (pendingHighSurrogate != 0) {
+      pendingHighSurrogate = 0;
+      addByte(REPLACEMENT_BYTE);
+    }
+    if (pendingByteCount == 1) {
+      int bits = pendingBits << 16;
+      buffer.append(ALPHABET[bits >>> 18]).append(ALPHABET[(bits >>> 12) & 0x3f]).append("==");
+    } else if (pendingByteCount == 2) {
+      int bits = pendingBits << 8;
+      buffer
+          .append(ALPHABET[bits >>> 18])
+          .append(ALPHABET[(bits >>> 12) & 0x3f])
+          .append(ALPHABET[(bits >>> 6) & 0x3f])
+          .append('=');
+    }
+    pendingBits = 0;
+    pendingByteCount = 0;
+    flush();
+  }
+
+  private void encodeChar(char c) throws IOException {
+    if (pendingHighSurrogate != 0) {
+      char high = pendingHighSurrogate;
+      pendingHighSurrogate = 0;
+      if (Character.isLowSurrogate(c)) {
+        int codePoint = Character.toCodePoint(high, c);
+        addByte(0xf0 | (codePoint >>> 18));
+        addByte(0x80 | ((codePoint >>> 12) & 0x3f));
+        addByte(0x80 | ((codePoint >>> 6) & 0x3f));
+        addByte(0x80 | (codePoint & 0x3f));
+        return;
+      }
+      addByte(REPLACEMENT_BYTE);
+    }
+    if (c < 0x80) {
+      addByte(c);
+    } else if (c < 0x800) {
+      addByte(0xc0 | (c >>> 6));
+      addByte(0x80 | (c & 0x3f));
+    } else if (Character.isHighSurrogate(c)) {
+      pendingHighSurrogate = c;
+    } else if (Character.isLowSurrogate(c)) {
+      addByte(REPLACEMENT_BYTE);
+    } else {
+      addByte(0xe0 | (c >>> 12));
+      addByte(0x80 | ((c >>> 6) & 0x3f));
+      addByte(0x80 | (c & 0x3f));
+    }
+  }
+
+  private void addByte(int b) throws IOException {
+    pendingBits = (pendingBits << 8) | b;
+    if (++pendingByteCount == 3) {
+      int bits = pendingBits;
+      pendingBits = 0;
+      pendingByteCount = 0;
+      writeGroup(bits);
+    }
+  }
+
+  /** Writes the four base64 chars for the 24 bits of a full group. */
+  private void writeGroup(int bits) throws IOException {
+    buffer
+        .append(ALPHABET[bits >>> 18])
+        .append(ALPHABET[(bits >>> 12) & 0x3f])
+        .append(ALPHABET[(bits >>> 6) & 0x3f])
+        .append(ALPHABET[bits & 0x3f]);
+    if (flushTo != null && buffer.length() >= CHUNK_SIZE) {
+      flush();
+    }
+  }
+
+  private void flush() throws IOException {
+    if (flushTo != null && buffer.length() > 0) {
+      flushTo.append(buffer);
+      buffer.setLength(0);
+    }
+  }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.html.types;
+
+import static com.google.common.html.types.BuilderUtils.escapeHtmlInternal;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.base.Charsets;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * HTML-escapes UTF-8 text as bytes, without decoding it into a String and encoding the result
+ * again.
+ *
+ * <p>Valid input is escaped and coerced exactly as {@link BuilderUtils#escapeHtmlInternal} does,
+ * then encoded as UTF-8. Each maximal subpart of an ill-formed sequence is replaced with U+FFFD, as
+ * the Unicode standard recommends and browsers do. This differs from {@link String#String(byte[],
+ * java.nio.charset.Charset)} only for encoded surrogates, e.g. {@code ED A0 80}, which become three
+ * U+FFFD rather than one.
+ */
+@GwtIncompatible("OutputStream")
+final class Utf8HtmlEscaper {
+
+  private Utf8HtmlEscaper() {}
+
+  /** How many bytes are buffered before they are written to a streaming output. */
+  private static final int CHUNK_SIZE = 4096;
+
+  /** U+FFFD, encoded as UTF-8. */
+  private static final byte[] REPLACEMENT_CHARACTER = {(byte) 0xef, (byte) 0xbf, (byte) 0xbd};
+
+  /** What each ASCII byte is replaced with, or null if it is kept, as the String escaper does. */
+  private static final byte[][] ASCII_REPLACEMENTS = new byte[0x80][];
+
+  static {
+    for (char c = 0; c < 0x80; c++) {
+      String s = String.valueOf(c);
+      String escaped = escapeHtmlInternal(s);
+      if (!escaped.equals(s)) {
+        ASCII_REPLACEMENTS[c] = escaped.getBytes(Charsets.UTF_8);
+      }
+    }
+  }
+
+  /**
+   * Returns the HTML-escaped form of the UTF-8 bytes of {@code in} from {@code start} to {@code
+   * end}, as a new array. Like {@link BuilderUtils#escapeHtmlInternal}, it makes a single scan when
+   * nothing needs escaping, and otherwise writes into an array sized exactly.
+   */
+  static byte[] escape(byte[] in, int start, int end) {
+    int firstEscape = start;
+    while (firstEscape < end) {
+      byte b = in[firstEscape];
+      if (b >= 0) {
+        if (ASCII_REPLACEMENTS[b] != null) {
+          break;
+        }
+        firstEscape++;
+      } else {
+        int length = validLength(in, firstEscape, end);
+        if (length < 0) {
+          break;
+        }
+        firstEscape += length;
+      }
+    }
+    if (firstEscape == end) {
+      return Arrays.copyOfRange(in, start, end);
+    }
+
+    int escapedLength = firstEscape - start;
+    for (int i = firstEscape; i < end; ) {
+      byte b = in[i];
+      if (b >= 0) {
+        byte[] replacement = ASCII_REPLACEMENTS[b];
+        escapedLength += replacement == null ? 1 : replacement.length;
+        i++;
+      } else {
+        int length = validLength(in, i, end);
+        if (length > 0) {
+          escapedLength += length;
+          i += length;
+        } else {
+          escapedLength += REPLACEMENT_CHARACTER.length;
+          i -= length;
+        }
+      }
+    }
+
+    byte[] out = new byte[escapedLength];
+    System.arraycopy(in, start, out, 0, firstEscape - start);
+    int outPos = firstEscape - start;
+    for (int i = firstEscape; i < end; ) {
+      byte b = in[i];
+      byte[] replacement;
+      if (b >= 0) {
+        replacement = ASCII_REPLACEMENTS[b];
+        if (replacement == null) {
+          out[outPos++] = b;
+          i++;
+          continue;
+        }
+        i++;
+      } else {
+        int length = validLength(in, i, end);
+        if (length > 0) {
+          System.arraycopy(in, i, out, outPos, length);
+          outPos += length;
+          i += length;
+          continue;
+        }
+        replacement = REPLACEMENT_CHARACTER;
+        i -= length;
+      }
+      System.arraycopy(replacement, 0, out, outPos, replacement.length);
+      outPos += replacement.length;
+    }
+    return out;
+  }
+
+  /**
+   * Writes the HTML-escaped form of the UTF-8 bytes of {@code in} from {@code start} to {@code end}
+   * to {@code out}, as {@link #escape} would produce it. Output is collected in chunks, so that
+   * {@code out} is not called for every replacement, but long runs of bytes that need no escaping
+   * are written as ranges of {@code in}.
+   */
+  static void writeEscaped(OutputStream out, byte[] in, int start, int end) throws IOException {
+    // Small inputs get a buffer about as large as their output; it must fit any one replacement.
+    byte[] buffer = new byte[Math.min(CHUNK_SIZE, 2 * (end - start) + 8)];
+    int count = 0;
+    int unescapedStart = start;
+    for (int i = start; i < end; ) {
+      byte b = in[i];
+      byte[] replacement;
+      int next;
+      if (b >= 0) {
+        replacement = ASCII_REPLACEMENTS[b];
+        next = i + 1;
+      } else {
+        int length = validLength(in, i, end);
+        replacement = length > 0 ? null : REPLACEMENT_CHARACTER;
+        next = i + Math.abs(length);
+      }
+      if (replacement != null) {
+        count = writeRun(out, buffer, count, in, unescapedStart, i);
+        if (count + replacement.length > buffer.length) {
+          out.write(buffer, 0, count);
+          count = 0;
+        }
+        System.arraycopy(replacement, 0, buffer, count, replacement.length);
+        count += replacement.length;
+        unescapedStart = next;
+      }
+      i = next;
+    }
+    count = writeRun(out, buffer, count, in, unescapedStart, end);
+    if (count > 0) {
+      out.write(buffer, 0, count);
+    }
+  }
+
+  /**
+   * Adds {@code in[start:end]} to the {@code count} bytes in {@code buffer}, writing the buffer to
+   * {@code out} first if it does not fit, and returns the new count. Runs too long for the buffer
+   * go straight to {@code out}.
+   */
+  private static int writeRun(
+      OutputStream out, byte[] buffer, int count, byte[] in, int start, int end)
+      throws IOException {
+    int length = end - start;
+    if (count + length > buffer.length) {
+      if (count > 0) {
+        out.write(buffer, 0, count);
+        count = 0;
+      }
+      if (length >= buffer.length) {
+        out.write(in, start, length);
+        return 0;
+      }
+    }
+    System.arraycopy(in, start, buffer, count, length);
+    return count + length;
+  }
+
+  /**
+   * Returns the length of the sequence starting with the non-ASCII byte at {@code in[i]} if it is
+   * well-formed and encodes an interchange-valid code point. Otherwise returns minus the number of
+   * bytes to replace with a single U+FFFD: the maximal subpart of an ill-formed sequence, or the
+   * whole sequence of a C1 control or noncharacter.
+   */
+  private static int validLength(byte[] in, int i, int end) {
+    int b0 = in[i] & 0xff;
+    if (b0 < 0xc2) {
+      // A continuation byte, or the start of an overlong two-byte sequence.
+      return -1;
+    }
+    if (b0 < 0xe0) {
+      if (!isContinuation(in, i + 1, end)) {
+        return -1;
+      }
+      // C1 controls are U+0080 to U+009F, i.e. C2 80 to C2 9F.
+      return b0 == 0xc2 && in[i + 1] < (byte) 0xa0 ? -2 : 2;
+    }
+    if (b0 < 0xf0) {
+      // Excludes overlong sequences, after E0, and surrogates, after ED.
+      int min = b0 == 0xe0 ? 0xa0 : 0x80;
+      int max = b0 == 0xed ? 0x9f : 0xbf;
+      if (!isInRange(in, i + 1, end, min, max)) {
+        return -1;
+      }
+      if (!isContinuation(in, i + 2, end)) {
+        return -2;
+      }
+      if (b0 == 0xef) {
+        int b1 = in[i + 1] & 0xff;
+        int b2 = in[i + 2] & 0xff;
+        // U+FDD0 to U+FDEF are EF B7 90 to EF B7 AF, and U+FFFE and U+FFFF are EF BF BE and BF.
+        if ((b1 == 0xb7 && b2 >= 0x90 && b2 <= 0xaf) || (b1 == 0xbf && b2 >= 0xbe)) {
+          return -3;
+        }
+      }
+      return 3;
+    }
+    if (b0 < 0xf5) {
+      // Excludes overlong sequences, after F0, and code points above U+10FFFF, after F4.
+      int min = b0 == 0xf0 ? 0x90 : 0x80;
+      int max = b0 == 0xf4 ? 0x8f : 0xbf;
+      if (!isInRange(in, i + 1, end, min, max)) {
+        return -1;
+      }
+      if (!isContinuation(in, i + 2, end)) {
+        return -2;
+      }
+      if (!isContinuation(in, i + 3, end)) {
+        return -3;
+      }
+      // A supplementary noncharacter ends in FFFE or FFFF, i.e. in xF BF BE or xF BF BF.
+      if ((in[i + 1] & 0x0f) == 0x0f && in[i + 2] == (byte) 0xbf && in[i + 3] >= (byte) 0xbe) {
+        return -4;
+      }
+      return 4;
+    }
+    return -1;
+  }
+
+  private static boolean isContinuation(byte[] in, int i, int end) {
+    return isInRange(in, i, end, 0x80, 0xbf);
+  }
+
+  private static boolean isInRange(byte[] in, int i, int end, int min, int max) {
+    if (i >= end) {
+      return false;
+    }
+    int b = in[i] & 0xff;
+    return b >= min && b <= max;
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.html.types;
+
+import com.google.common.annotations.GwtCompatible;
+import java.io.IOException;
+import javax.annotation.Nullable;
+
+/**
+ * Percent-encodes the chars appended to it as UTF-8, exactly as {@code
+ * UrlEscapers.urlPathSegmentEscaper()} does, without building intermediate strings.
+ *
+ * <p>Like that escaper, it throws {@link IllegalArgumentException} on unpaired surrogates. When
+ * streaming, output appended before the error is not taken back. Call {@link #finish()} once all
+ * input has been appended.
+ */
+@GwtCompatible
+final class Utf8PercentEncoder implements Appendable {
+
+  private static final char[] UPPER_HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+  /** How many chars are buffered before they are flushed to a streaming output. */
+  private static final int CHUNK_SIZE = 4096;
+
+  /** The ASCII characters that are left as is: alphanumerics and {@code -._~!$'()*,;&=@:+}. */
+  private static final boolean[] SAFE_CHARS = new boolean[128];
+
+  static {
+    for (char c = 'a'; c <= 'z'; c++) {
+      SAFE_CHARS[c] = true;
+      SAFE_CHARS[c - 'a' + 'A'] = true;
+    }
+    for (char c = '0'; c <= '9'; c++) {
+      SAFE_CHARS[c] = true;
+    }
+    for (char c : "-._~!$'()*,;&=@:+".toCharArray()) {
+      SAFE_CHARS[c] = true;
+    }
+  }
+
+  private final StringBuilder buffer;
+  @Nullable private final Appendable flushTo;
+
+  /** A high surrogate whose low surrogate may come with the next append. */
+  private char pendingHighSurrogate;
+
+  /** Creates an encoder that writes everything into {@code out}, which should be presized. */
+  Utf8PercentEncoder(StringBuilder out) {
+    this.buffer = out;
+    this.flushTo = null;
+  }
+
+  /** Creates an encoder that streams its output to {@code out} in chunks. */
+  Utf8PercentEncoder(Appendable out) {
+    this.buffer = new StringBuilder(CHUNK_SIZE + 12);
+    this.flushTo = out;
+  }
+
+  /**
+   * Returns the length of the percent-encoded form of {@code s}.
+   *
+   * @throws IllegalArgumentException if {@code s} contains an unpaired surrogate
+   */
+  static long encodedLength(CharSequence s) {
+    int length = s.length();
+    long encodedLength = 0;
+    for (int i = 0; i < length; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        encodedLength += SAFE_CHARS[c] ? 1 : 3;
+      } else if (c < 0x800) {
+        encodedLength += 6;
+      } else if (Character.isHighSurrogate(c)) {
+        if (i + 1 == length || !Character.isLowSurrogate(s.charAt(i + 1))) {
+          throw unpairedSurrogate(c);
+        }
+        encodedLength += 12;
+        i++;
+      } else if (Character.isLowSurrogate(c)) {
+        throw unpairedSurrogate(c);
+      } else {
+        encodedLength += 9;
+      }
+    }
+    return encodedLength;
+  }
+
+  @Override
+  public Utf8PercentEncoder append(CharSequence csq) throws IOException {
+    return append(csq, 0, csq.length());
+  }
+
+  @Override
+  public Utf8PercentEncoder append(CharSequence csq, int start, int end) throws IOException {
+    int safeStart = start;
+    for (int i = start; i < end; i++) {
+      char c = csq.charAt(i);
+      if (c < 0x80 && SAFE_CHARS[c] && pendingHighSurrogate == 0) {
+        continue;
+      }
+      // Copy the run of safe chars before c as a range.
+      appendRun(csq, safeStart, i);
+      encodeChar(c);
+      maybeFlush();
+      safeStart = i + 1;
+    }
+    appendRun(csq, safeStart, end);
+    maybeFlush();
+    return this;
+  }
+
+  @Override
+  public Utf8PercentEncoder append(char c) throws IOException {
+    encodeChar(c);
+    maybeFlush();
+    return this;
+  }
+
+  /**
+   * Checks that the input did not end in the middle of a surrogate pair, and flushes a streaming
+   * output.
+   */
+  void finish() throws IOException {
+    if (pendingHighSurrogate != 0) {
+      throw unpairedSurrogate(pendingHighSurrogate);
+    }
+    flush();
+  }
+
+  private void encodeChar(char c) {
+    if (pendingHighSurrogate != 0) {
+      char high = pendingHighSurrogate;
+      pendingHighSurrogate = 0;
+      if (!Character.isLowSurrogate(c)) {
+        throw unpairedSurrogate(high);
+      }
+      int codePoint = Character.toCodePoint(high, c);
+      appendByte(0xf0 | (codePoint >>> 18));
+      appendByte(0x80 | ((codePoint >>> 12) & 0x3f));
+      appendByte(0x80 | ((codePoint >>> 6) & 0x3f));
+      appendByte(0x80 | (codePoint & 0x3f));
+    } else if (c < 0x80) {
+      if (SAFE_CHARS[c]) {
+        buffer.append(c);
+      } else {
+        appendByte(c);
+      }
+    } else if (c < 0x800) {
+      appendByte(0xc0 | (c >>> 6));
+      appendByte(0x80 | (c & 0x3f));
+    } else if (Character.isHighSurrogate(c)) {
+      pendingHighSurrogate = c;
+    } else if (Character.isLowSurrogate(c)) {
+      throw unpairedSurrogate(c);
+    } else {
+      appendByte(0xe0 | (c >>> 12));
+      appendByte(0x80 | ((c >>> 6) & 0x3f));
+      appendByte(0x80 | (c & 0x3f));
+    }
+  }
+
+  private void appendRun(CharSequence csq, int start, int end) throws IOException {
+    if (flushTo != null && end - start >= CHUNK_SIZE) {
+      // Long runs go straight to the streaming output rather than through the buffer.
+      flush();
+      flushTo.append(csq, start, end);
+    } else if (start < end) {
+      buffer.append(csq, start, end);
+    }
+  }
+
+  private void appendByte(int b) {
+    buffer.append('%').append(UPPER_HEX_DIGITS[b >>> 4]).append(UPPER_HEX_DIGITS[b & 0xf]);
+  }
+
+  private void maybeFlush() throws IOException {
+    if (flushTo != null && buffer.length() >= CHUNK_SIZE) {
+      flush();
+    }
+  }
+
+  private void flush() throws IOException {
+    if (flushTo != null && buffer.length() > 0) {
+      flushTo.append(buffer);
+      buffer.setLength(0);
+    }
+  }
+
+  private static IllegalArgumentException unpairedSurrogate(char c) {
+    return new IllegalArgumentException(
+        "Unpaired surrogate '\\u" + Integer.toHexString(c) + "' in HTML for a data: URL");
+  }
+}
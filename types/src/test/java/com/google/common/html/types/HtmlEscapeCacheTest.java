@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.html.types;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.base.Strings;
+import junit.framework.TestCase;
+
+/** Unit tests for {@link HtmlEscapeCache}. */
+@GwtIncompatible("HtmlEscapeCache")
+public class HtmlEscapeCacheTest extends TestCase {
+
+  public void testEscapesAsHtmlEscape() {
+    HtmlEscapeCache cache = HtmlEscapeCache.create(16, 64);
+    for (String text : new String[] {"", "plain", "Tom & Jerry's <b>", "a\u0000\ud801"}) {
+      assertEquals(SafeHtmls.htmlEscape(text), cache.htmlEscape(text));
+      assertEquals(SafeHtmls.htmlEscape(text), cache.htmlEscape(text));
+    }
+  }
+
+  public void testReturnsCachedResult() {
+    HtmlEscapeCache cache = HtmlEscapeCache.create(16, 64);
+    SafeHtml html = cache.htmlEscape("<b>");
+    assertEquals(0, cache.hitCount());
+    assertEquals(1, cache.missCount());
+
+    assertSame(html, cache.htmlEscape(new StringBuilder("<").append("b>").toString()));
+    assertSame(html, cache.htmlEscape("<b>"));
+    assertEquals(2, cache.hitCount());
+    assertEquals(1, cache.missCount());
+  }
+
+  public void testLongTextBypassesCache() {
+    HtmlEscapeCache cache = HtmlEscapeCache.create(16, 8);
+    String text = Strings.repeat("<", 9);
+    assertEquals(SafeHtmls.htmlEscape(text), cache.htmlEscape(text));
+    assertNotSame(cache.htmlEscape(text), cache.htmlEscape(text));
+    assertEquals(0, cache.hitCount());
+    assertEquals(0, cache.missCount());
+
+    cache.htmlEscape(Strings.repeat("<", 8));
+    assertEquals(1, cache.missCount());
+  }
+
+  public void testFillsEmptySlotsBeforeEvicting() {
+    HtmlEscapeCache cache = HtmlEscapeCache.create(4, 64);
+    for (int round = 0; round < 3; round++) {
+      for (int i = 0; i < 4; i++) {
+        cache.htmlEscape("label " + i);
+      }
+    }
+    assertEquals(8, cache.hitCount());
+    assertEquals(4, cache.missCount());
+  }
+
+  public void testEvictsWithClockHand() {
+    HtmlEscapeCache cache = HtmlEscapeCache.create(4, 64);
+    for (int round = 0; round < 2; round++) {
+      for (String text : new String[] {"a", "b", "c", "d"}) {
+        cache.htmlEscape(text);
+      }
+    }
+    // Every entry is referenced: the hand clears them all, comes back to "a" and evicts it.
+    SafeHtml e = cache.htmlEscape("e");
+    // The hand continues from "b", which it cleared, instead of evicting "e" from the same slot.
+    cache.htmlEscape("f");
+    assertSame(e, cache.htmlEscape("e"));
+    assertEquals(5, cache.hitCount());
+    cache.htmlEscape("b");
+    assertEquals(5, cache.hitCount());
+  }
+
+  public void testCountsHitsAcrossThreads() throws InterruptedException {
+    final HtmlEscapeCache cache = HtmlEscapeCache.create(16, 64);
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] =
+          new Thread() {
+            @Override
+            public void run() {
+              for (int j = 0; j < 1000; j++) {
+                SafeHtml unused = cache.htmlEscape("label " + (j % 8));
+              }
+            }
+          };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(4000, cache.hitCount() + cache.missCount());
+    assertTrue("misses: " + cache.missCount(), cache.missCount() >= 8);
+  }
+
+  public void testIsBounded() {
+    HtmlEscapeCache cache = HtmlEscapeCache.create(4, 64);
+    for (int i = 0; i < 100; i++) {
+      cache.htmlEscape("label " + i);
+    }
+    for (int i = 0; i < 100; i++) {
+      assertEquals(SafeHtmls.htmlEscape("label " + i), cache.htmlEscape("label " + i));
+    }
+    assertTrue("hits: " + cache.hitCount(), cache.hitCount() <= 4);
+  }
+
+  public void testKeepsEntriesInUseOverNewOnes() {
+    HtmlEscapeCache cache = HtmlEscapeCache.create(4, 64);
+    SafeHtml hot = cache.htmlEscape("hot");
+    for (int i = 0; i < 100; i++) {
+      assertSame(hot, cache.htmlEscape("hot"));
+      cache.htmlEscape("cold " + i);
+    }
+    assertEquals(100, cache.hitCount());
+  }
+
+  public void testClear() {
+    HtmlEscapeCache cache = HtmlEscapeCache.create(16, 64);
+    SafeHtml html = cache.htmlEscape("<b>");
+    cache.clear();
+    assertNotSame(html, cache.htmlEscape("<b>"));
+    assertEquals(0, cache.hitCount());
+    assertEquals(2, cache.missCount());
+  }
+
+  public void testCreate_rejectsInvalidSizes() {
+    try {
+      HtmlEscapeCache.create(0, 64);
+      fail("maxEntries should be positive");
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      HtmlEscapeCache.create(16, 0);
+      fail("maxLength should be positive");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+}
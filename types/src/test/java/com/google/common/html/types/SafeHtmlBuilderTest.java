@@ -24,6 +24,9 @@ import static com.google.common.html.types.testing.assertions.Assertions.assertC
 
 import com.google.common.annotations.GwtCompatible;
 import com.google.common.annotations.GwtIncompatible;
+import com.google.common.base.Strings;
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import junit.framework.TestCase;
 
@@ -67,6 +70,11 @@ public class SafeHtmlBuilderTest extends TestCase {
     assertSameHtml("<a title=\"&quot;\"></a>", new SafeHtmlBuilder("a").setTitle("\""));
   }
 
+  public void testCoercesAttributeValues() {
+    assertSameHtml(
+        "<a title=\"\ufffd&lt;\ufffd\"></a>", new SafeHtmlBuilder("a").setTitle("\u0001<\ud801"));
+  }
+
   public void testAllowsEmptyAttributeValue() {
     assertSameHtml("<a title=\"\"></a>", new SafeHtmlBuilder("a").setTitle(""));
   }
@@ -84,6 +92,18 @@ public class SafeHtmlBuilderTest extends TestCase {
         new SafeHtmlBuilder("a").escapeAndAppendContent("<").escapeAndAppendContent("&"));
   }
 
+  public void testEscapesContentFromCharSequence() {
+    assertSameHtml(
+        "<a>&lt;b&gt;</a>",
+        new SafeHtmlBuilder("a").escapeAndAppendContent(new StringBuilder("<b>")));
+  }
+
+  public void testEscapesContentFromCharArrayRange() {
+    assertSameHtml(
+        "<a>&lt;b&gt;</a>",
+        new SafeHtmlBuilder("a").escapeAndAppendContent("xx<b>yy".toCharArray(), 2, 3));
+  }
+
   public void testAppendsContent() {
     SafeHtml br = new SafeHtmlBuilder("br").build();
     SafeHtml i = new SafeHtmlBuilder("i").build();
@@ -102,6 +122,15 @@ public class SafeHtmlBuilderTest extends TestCase {
             .escapeAndAppendContent("c"));
   }
 
+  public void testAppendsLargeContent() {
+    String text = Strings.repeat("<>", SafeHtmls.MIN_LAZY_CONCAT_LENGTH);
+    String escaped = Strings.repeat("&lt;&gt;", SafeHtmls.MIN_LAZY_CONCAT_LENGTH);
+    SafeHtml inner = new SafeHtmlBuilder("span").escapeAndAppendContent(text).build();
+    assertSameHtml(
+        "<div title=\"&amp;\"><span>" + escaped + "</span><span>" + escaped + "</span></div>",
+        new SafeHtmlBuilder("div").setTitle("&").appendContent(inner, inner));
+  }
+
   public void testDisallowsContentOnVoidElements() {
     SafeHtml html = new SafeHtmlBuilder("i").build();
     ArrayList<SafeHtml> htmls = new ArrayList<SafeHtml>();
@@ -146,6 +175,18 @@ public class SafeHtmlBuilderTest extends TestCase {
     }
   }
 
+  public void testValidatesDataAttributeNames() {
+    assertSameHtml(
+        "<a data-Foo-bar=\"x\"></a>", new SafeHtmlBuilder("a").setDataAttribute("data-Foo-bar", "x"));
+    for (String name : new String[] {"data-", "data", "data-a1", "data-a b", "data-a=", "DATA-a"}) {
+      try {
+        new SafeHtmlBuilder("a").setDataAttribute(name, "");
+        fail("Data attribute name \"" + name + "\" shouldn't be allowed.");
+      } catch (IllegalArgumentException expected) {
+      }
+    }
+  }
+
   public void testAllowsResourceUrlInLinkedStylesheet() {
     TrustedResourceUrl url = TrustedResourceUrls.fromConstant("a");
     assertSameHtml(
@@ -249,6 +290,15 @@ public class SafeHtmlBuilderTest extends TestCase {
     }
   }
 
+  public void testAllowsCustomElementNames() {
+    assertSameHtml("<my-element2></my-element2>", new SafeHtmlBuilder("my-element2"));
+    try {
+      new SafeHtmlBuilder("");
+      fail("Empty tag name shouldn't be allowed.");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
   public void testDisallowsUnsafeTagNames() {
     try {
       new SafeHtmlBuilder("scRipt");
@@ -342,6 +392,31 @@ public class SafeHtmlBuilderTest extends TestCase {
         new SafeHtmlBuilder("div").setId("id2").setClass("a"));
   }
 
+  public void testSettingAttributeAgainKeepsItsPosition() {
+    assertSameHtml(
+        "<div id=\"b\" class=\"c\" title=\"d\" dir=\"ltr\" lang=\"en\"></div>",
+        new SafeHtmlBuilder("div")
+            .setId("a")
+            .setClass("c")
+            .setTitle("d")
+            .setDir(SafeHtmlBuilder.DirValue.LTR)
+            .setLang("en")
+            .setId("b"));
+  }
+
+  public void testEnumAttributes() {
+    assertSameHtml(
+        "<a dir=\"rtl\" target=\"_blank\" title=\"t\"></a>",
+        new SafeHtmlBuilder("a")
+            .setDir(SafeHtmlBuilder.DirValue.LTR)
+            .setTarget(SafeHtmlBuilder.TargetValue.BLANK)
+            .setTitle("t")
+            .setDir(SafeHtmlBuilder.DirValue.RTL));
+    assertSameHtml(
+        "<img loading=\"lazy\">",
+        new SafeHtmlBuilder("img").setLoading(SafeHtmlBuilder.LoadingValue.LAZY));
+  }
+
   public void testAllowsNameTypeValueForInput() {
     assertSameHtml(
         "<input name=\"myName\" value=\"myValue\" type=\"hidden\">",
@@ -398,6 +473,18 @@ public class SafeHtmlBuilderTest extends TestCase {
         new SafeHtmlBuilder("script").appendScriptContent(newSafeScriptForTest("foo")));
   }
 
+  public void testScript_largeBodiesAndReset() {
+    String body = Strings.repeat("a<b;", SafeHtmls.MIN_LAZY_CONCAT_LENGTH);
+    SafeHtmlBuilder builder =
+        new SafeHtmlBuilder("script")
+            .appendScriptContent(newSafeScriptForTest(body))
+            .appendScriptContent(newSafeScriptForTest("c"));
+    assertSameHtml("<script>" + body + "c</script>", builder);
+
+    assertSameHtml(
+        "<script>d</script>", builder.reset().appendScriptContent(newSafeScriptForTest("d")));
+  }
+
   public void testScriptSrc() {
     assertSameHtml(
         "<script src=\"trusted\"></script>",
@@ -464,7 +551,66 @@ public class SafeHtmlBuilderTest extends TestCase {
         new SafeHtmlBuilder("script").setAsync(SafeHtmlBuilder.AsyncValue.ASYNC));
   }
 
+  @GwtIncompatible("StringWriter")
+  public void testBuildToWriter() throws IOException {
+    StringWriter writer = new StringWriter();
+    writer.write("<p>");
+    new SafeHtmlBuilder("a")
+        .setTitle("Tom & \"Jerry\"")
+        .escapeAndAppendContent("x<y")
+        .appendContent(new SafeHtmlBuilder("br").build())
+        .buildTo(writer);
+    assertEquals(
+        "<p><a title=\"Tom &amp; &quot;Jerry&quot;\">x&lt;y<br></a>", writer.toString());
+  }
+
+  public void testReset() {
+    SafeHtmlBuilder builder =
+        new SafeHtmlBuilder("a")
+            .setHref(newSafeUrlForTest("https://example.com/"))
+            .setTitle("t")
+            .escapeAndAppendContent("x")
+            .useSlashOnVoid();
+    assertSameHtml("<a href=\"https://example.com/\" title=\"t\">x</a>", builder);
+
+    assertSameHtml("<a></a>", builder.reset());
+    assertSameHtml("<a id=\"b\">y</a>", builder.setId("b").escapeAndAppendContent("y"));
+    assertSameHtml("<br>", builder.reset("br"));
+  }
+
+  public void testResetAppliesRestrictionsOfNewElement() {
+    SafeHtmlBuilder builder = new SafeHtmlBuilder("a").setHref(newSafeUrlForTest("b"));
+    builder.reset("br");
+    try {
+      builder.escapeAndAppendContent("x");
+      fail("Void elements should not accept content");
+    } catch (IllegalStateException expected) {
+    }
+    try {
+      builder.setHref(newSafeUrlForTest("b"));
+      fail("<br> should not accept a SafeUrl href");
+    } catch (IllegalArgumentException expected) {
+    }
+    assertSameHtml(
+        "<form action=\"b\"></form>", builder.reset("form").setAction(newSafeUrlForTest("b")));
+  }
+
+  public void testResetKeepsBuilderOnInvalidElementName() {
+    SafeHtmlBuilder builder = new SafeHtmlBuilder("div").setId("a");
+    try {
+      builder.reset("script>");
+      fail("Invalid element names should be disallowed");
+    } catch (IllegalArgumentException expected) {
+    }
+    assertSameHtml("<div id=\"a\"></div>", builder);
+  }
+
   private static void assertSameHtml(String expected, SafeHtmlBuilder builder) {
     assertEquals(expected, builder.build().getSafeHtmlString());
+    try {
+      assertEquals(expected, builder.buildTo(new StringBuilder()).toString());
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
   }
 }
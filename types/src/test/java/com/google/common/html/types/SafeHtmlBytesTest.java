@@ -0,0 +1,230 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.html.types;
+
+import static com.google.common.html.types.testing.HtmlConversions.newSafeHtmlForTest;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.base.Strings;
+import com.google.common.testing.EqualsTester;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+/** Unit tests for {@link SafeHtmlBytes}. */
+@GwtIncompatible("SafeHtmlBytes")
+public class SafeHtmlBytesTest extends TestCase {
+
+  /** Same string as used in {@link SafeHtmlsTest}: one, two, three and four UTF-8 bytes. */
+  private static final String HTML = "<b>tê丄𐒖</b>";
+
+  public void testEncodesAsUtf8() {
+    SafeHtmlBytes bytes = SafeHtmls.toUtf8Bytes(newSafeHtmlForTest(HTML));
+    byte[] expected = HTML.getBytes(StandardCharsets.UTF_8);
+    assertTrue(Arrays.equals(expected, bytes.toByteArray()));
+    assertEquals(expected.length, bytes.length());
+  }
+
+  public void testEncodesUnpairedSurrogatesAsQuestionMarks() {
+    SafeHtmlBytes bytes = SafeHtmls.toUtf8Bytes(newSafeHtmlForTest("a\ud801b"));
+    assertTrue(Arrays.equals(new byte[] {'a', '?', 'b'}, bytes.toByteArray()));
+  }
+
+  public void testEncodesConcatenations() {
+    SafeHtml part = newSafeHtmlForTest(Strings.repeat(HTML, 20));
+    SafeHtmlBytes bytes = SafeHtmls.toUtf8Bytes(SafeHtmls.concat(part, part));
+    assertTrue(
+        Arrays.equals(
+            Strings.repeat(HTML, 40).getBytes(StandardCharsets.UTF_8), bytes.toByteArray()));
+  }
+
+  public void testToSafeHtml() {
+    SafeHtml html = newSafeHtmlForTest(HTML);
+    assertSame(html, SafeHtmls.toUtf8Bytes(html).toSafeHtml());
+  }
+
+  public void testByteArrayIsACopy() {
+    SafeHtmlBytes bytes = SafeHtmls.toUtf8Bytes(newSafeHtmlForTest("<b>"));
+    bytes.toByteArray()[1] = 'i';
+    assertEquals('b', bytes.toByteArray()[1]);
+  }
+
+  public void testAsByteBuffer() {
+    SafeHtmlBytes bytes = SafeHtmls.toUtf8Bytes(newSafeHtmlForTest(HTML));
+    ByteBuffer buffer = bytes.asByteBuffer();
+    assertTrue(buffer.isReadOnly());
+    assertEquals(ByteBuffer.wrap(HTML.getBytes(StandardCharsets.UTF_8)), buffer);
+    try {
+      buffer.put(0, (byte) 'x');
+      fail("The buffer should be read-only");
+    } catch (ReadOnlyBufferException expected) {
+    }
+
+    buffer.get();
+    assertEquals(0, bytes.asByteBuffer().position());
+  }
+
+  public void testWriteToOutputStream() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    SafeHtmls.toUtf8Bytes(newSafeHtmlForTest(HTML)).writeTo(out);
+    assertEquals(HTML, new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  public void testWriteToChannel() throws IOException {
+    String html = Strings.repeat(HTML, 1000);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    SafeHtmls.toUtf8Bytes(newSafeHtmlForTest(html)).writeTo(Channels.newChannel(out));
+    assertEquals(html, new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  public void testHtmlEscapeUtf8() {
+    assertEscapesUtf8("", "");
+    assertEscapesUtf8("plain text", "plain text");
+    assertEscapesUtf8(
+        "&lt;b&gt;t\u00ea\u4e04\ud801\udc96&amp;&quot;&#39;",
+        "<b>t\u00ea\u4e04\ud801\udc96&\"'");
+  }
+
+  public void testHtmlEscapeUtf8_returnsCopyWhenNothingToEscape() {
+    String text = "t\u00ea\u4e04\ud801\udc96";
+    byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+    SafeHtmlBytes bytes = SafeHtmls.htmlEscapeUtf8(utf8);
+    utf8[0] = '<';
+    assertEquals(text, bytes.toSafeHtml().getSafeHtmlString());
+  }
+
+  public void testHtmlEscapeUtf8_coercesToInterchangeValid() {
+    // Tab, line feed and carriage return are kept; other C0 and C1 controls are replaced.
+    assertEscapesUtf8("\t\n\r\ufffd\ufffd\ufffd\u00a0", "\t\n\r\u0000\u007f\u0085\u00a0");
+    // Noncharacters, with one replacement for each.
+    assertEscapesUtf8("\ufffd\ufffd\ufffd\ufdcf", "\ufdd0\uffff\udbff\udffe\ufdcf");
+    // Code points that are merely unassigned are kept.
+    assertEscapesUtf8("\ud83f\udffd\u0378", "\ud83f\udffd\u0378");
+  }
+
+  public void testHtmlEscapeUtf8_replacesIllFormedSequences() {
+    // Continuation bytes, overlong and out-of-range lead bytes: one replacement for each byte.
+    assertEscapesUtf8Bytes("\ufffd\ufffda", 0x80, 0xbf, 'a');
+    assertEscapesUtf8Bytes("\ufffd\ufffd\ufffd\ufffd", 0xc0, 0xaf, 0xf5, 0xff);
+    assertEscapesUtf8Bytes("\ufffd\ufffd\ufffd", 0xe0, 0x80, 0x80);
+    // Encoded surrogates, as browsers decode them.
+    assertEscapesUtf8Bytes("\ufffd\ufffd\ufffd", 0xed, 0xa0, 0x80);
+    assertEscapesUtf8Bytes("\ufffd\ufffd\ufffd\ufffd", 0xf4, 0x90, 0x80, 0x80);
+    // Truncated sequences, which are replaced once.
+    assertEscapesUtf8Bytes("\ufffd&lt;", 0xe4, 0xb8, '<');
+    assertEscapesUtf8Bytes("\ufffd", 0xf0, 0x90, 0x92);
+    assertEscapesUtf8Bytes("\ufffd\ufffd", 0xc3, 0xf0, 0x90);
+  }
+
+  public void testHtmlEscapeUtf8_range() {
+    byte[] utf8 = "xx<\u00ea>yy".getBytes(StandardCharsets.UTF_8);
+    assertEquals(
+        "&lt;\u00ea&gt;",
+        SafeHtmls.htmlEscapeUtf8(utf8, 2, 4).toSafeHtml().getSafeHtmlString());
+    try {
+      SafeHtmls.htmlEscapeUtf8(utf8, 6, 3);
+      fail("Ranges outside the array should be rejected");
+    } catch (IndexOutOfBoundsException expected) {
+    }
+  }
+
+  public void testHtmlEscapeUtf8_byteBuffer() {
+    byte[] utf8 = "xx<\u00ea>".getBytes(StandardCharsets.UTF_8);
+    ByteBuffer heap = ByteBuffer.wrap(utf8);
+    heap.position(2);
+    assertEquals(
+        "&lt;\u00ea&gt;", SafeHtmls.htmlEscapeUtf8(heap.slice()).toSafeHtml().getSafeHtmlString());
+    assertEquals(
+        "&lt;\u00ea&gt;", SafeHtmls.htmlEscapeUtf8(heap).toSafeHtml().getSafeHtmlString());
+    assertFalse(heap.hasRemaining());
+
+    ByteBuffer direct = ByteBuffer.allocateDirect(utf8.length);
+    direct.put(utf8).flip();
+    assertEquals(
+        "xx&lt;\u00ea&gt;", SafeHtmls.htmlEscapeUtf8(direct).toSafeHtml().getSafeHtmlString());
+    assertFalse(direct.hasRemaining());
+  }
+
+  public void testWriteHtmlEscapedUtf8() throws IOException {
+    byte[] utf8 = "xTom & \"Jerry\" \u00ea\u0001y".getBytes(StandardCharsets.UTF_8);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    SafeHtmls.writeHtmlEscapedUtf8(out, utf8, 1, utf8.length - 2);
+    SafeHtmls.writeHtmlEscapedUtf8(out, new byte[] {'<', (byte) 0xc3}, 0, 2);
+    assertEquals(
+        "Tom &amp; &quot;Jerry&quot; \u00ea\ufffd&lt;\ufffd",
+        new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  public void testHtmlEscapeUtf8_matchesHtmlEscape() throws IOException {
+    String text =
+        Strings.repeat("<a href=\"x\">Tom & Jerry's t\u00ea\u4e04\ud801\udc96</a>\n", 100);
+    byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+    byte[] expected =
+        SafeHtmls.htmlEscape(text).getSafeHtmlString().getBytes(StandardCharsets.UTF_8);
+    assertTrue(Arrays.equals(expected, SafeHtmls.htmlEscapeUtf8(utf8).toByteArray()));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    SafeHtmls.writeHtmlEscapedUtf8(out, utf8, 0, utf8.length);
+    assertTrue(Arrays.equals(expected, out.toByteArray()));
+  }
+
+  public void testToString_returnsDebugString() {
+    assertEquals(
+        "SafeHtmlBytes{" + HTML + "}", SafeHtmls.toUtf8Bytes(newSafeHtmlForTest(HTML)).toString());
+  }
+
+  public void testEqualsAndHashCode() {
+    new EqualsTester()
+        .addEqualityGroup(
+            SafeHtmls.toUtf8Bytes(newSafeHtmlForTest("<b>One</b>")),
+            SafeHtmls.toUtf8Bytes(newSafeHtmlForTest("<b>" + "One</b>")))
+        .addEqualityGroup(
+            SafeHtmls.toUtf8Bytes(newSafeHtmlForTest("&lt;b&gt;")),
+            SafeHtmls.htmlEscapeUtf8("<b>".getBytes(StandardCharsets.UTF_8)))
+        .addEqualityGroup(SafeHtmls.toUtf8Bytes(newSafeHtmlForTest("<b>Two</b>")))
+        .addEqualityGroup(newSafeHtmlForTest("<b>Two</b>"))
+        .testEquals();
+  }
+
+  public void testEquals_comparesEncodedBytes() {
+    assertEquals(
+        SafeHtmls.toUtf8Bytes(newSafeHtmlForTest("a?")),
+        SafeHtmls.toUtf8Bytes(newSafeHtmlForTest("a\ud801")));
+  }
+
+  private static void assertEscapesUtf8(String expected, String text) {
+    assertEscapesUtf8(expected, text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void assertEscapesUtf8Bytes(String expected, int... bytes) {
+    byte[] utf8 = new byte[bytes.length];
+    for (int i = 0; i < bytes.length; i++) {
+      utf8[i] = (byte) bytes[i];
+    }
+    assertEscapesUtf8(expected, utf8);
+  }
+
+  private static void assertEscapesUtf8(String expected, byte[] utf8) {
+    SafeHtmlBytes bytes = SafeHtmls.htmlEscapeUtf8(utf8);
+    assertEquals(expected, bytes.toSafeHtml().getSafeHtmlString());
+    assertTrue(Arrays.equals(expected.getBytes(StandardCharsets.UTF_8), bytes.toByteArray()));
+  }
+}
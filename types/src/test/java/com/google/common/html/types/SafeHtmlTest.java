@@ -19,6 +19,7 @@ package com.google.common.html.types;
 import static com.google.common.html.types.testing.HtmlConversions.newSafeHtmlForTest;
 
 import com.google.common.annotations.GwtCompatible;
+import com.google.common.base.Strings;
 import com.google.common.testing.EqualsTester;
 import junit.framework.TestCase;
 
@@ -43,6 +44,11 @@ public class SafeHtmlTest extends TestCase {
         .addEqualityGroup(
             newSafeHtmlForTest("<b>Hello World</b> Two"),
             newSafeHtmlForTest("<b>Hello World</b> Two"))
+        .addEqualityGroup(
+            newSafeHtmlForTest(Strings.repeat("<i>Hello World</i>", 40)),
+            SafeHtmls.concat(
+                newSafeHtmlForTest(Strings.repeat("<i>Hello World</i>", 20)),
+                newSafeHtmlForTest(Strings.repeat("<i>Hello World</i>", 20))))
         .testEquals();
   }
 }
@@ -21,6 +21,10 @@ import static com.google.common.html.types.testing.assertions.Assertions.assertC
 
 import com.google.common.annotations.GwtCompatible;
 import com.google.common.annotations.GwtIncompatible;
+import com.google.common.base.Strings;
+import com.google.common.testing.GcFinalization;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
 import junit.framework.TestCase;
@@ -177,6 +181,162 @@ public class SafeHtmlsTest extends TestCase {
     assertEquals("&lt;3", SafeHtmls.concat(htmls).getSafeHtmlString());
   }
 
+  public void testConcat_largeFragmentsAreConcatenatedLazily() throws Exception {
+    String chunk = Strings.repeat("<p>chunk</p>", 100);
+    SafeHtml html = newSafeHtmlForTest(chunk);
+    SafeHtml concatenated = SafeHtmls.concat(html, SafeHtmls.htmlEscape("&"), html);
+    String expected = chunk + "&amp;" + chunk;
+
+    StringBuilder sb = new StringBuilder();
+    assertSame(sb, SafeHtmls.appendTo(sb, concatenated));
+    assertEquals(expected, sb.toString());
+    assertEquals(expected.length(), concatenated.length());
+    assertEquals(newSafeHtmlForTest(expected), concatenated);
+    assertEquals(newSafeHtmlForTest(expected).hashCode(), concatenated.hashCode());
+    assertEquals(expected, concatenated.getSafeHtmlString());
+    assertEquals("SafeHtml{" + expected + "}", concatenated.toString());
+  }
+
+  public void testConcat_deeplyNested() {
+    SafeHtml html = SafeHtmls.htmlEscape(Strings.repeat("x", SafeHtmls.MIN_LAZY_CONCAT_LENGTH));
+    StringBuilder expected = new StringBuilder(html.getSafeHtmlString());
+    for (int i = 0; i < 100000; i++) {
+      html = SafeHtmls.concat(html, SafeHtmls.htmlEscape("<"));
+      expected.append("&lt;");
+    }
+    assertEquals(expected.toString(), html.getSafeHtmlString());
+  }
+
+  public void testConcat_readBetweenSteps() throws IOException {
+    SafeHtml html = SafeHtmls.htmlEscape(Strings.repeat("x", SafeHtmls.MIN_LAZY_CONCAT_LENGTH));
+    StringBuilder expected = new StringBuilder(html.getSafeHtmlString());
+    for (int i = 0; i < 100; i++) {
+      html = SafeHtmls.concat(html, SafeHtmls.htmlEscape("<"));
+      expected.append("&lt;");
+      assertEquals(expected.toString(), html.getSafeHtmlString());
+    }
+    assertEquals(expected.toString(), SafeHtmls.appendTo(new StringBuilder(), html).toString());
+  }
+
+  @GwtIncompatible("WeakReference")
+  public void testConcat_flatteningReleasesParts() {
+    SafeHtml first =
+        SafeHtmls.concat(
+            SafeHtmls.htmlEscape(Strings.repeat("x", SafeHtmls.MIN_LAZY_CONCAT_LENGTH)),
+            SafeHtmls.htmlEscape("<"));
+    String unused = first.getSafeHtmlString();
+    SafeHtml second = SafeHtmls.concat(first, SafeHtmls.htmlEscape("<"));
+    unused = second.getSafeHtmlString();
+    WeakReference<SafeHtml> firstReference = new WeakReference<>(first);
+    first = null;
+    GcFinalization.awaitClear(firstReference);
+    assertTrue(second.getSafeHtmlString().endsWith("&lt;&lt;"));
+  }
+
+  public void testHtmlEscape() {
+    assertEquals("", SafeHtmls.htmlEscape("").getSafeHtmlString());
+    assertEquals("plain text", SafeHtmls.htmlEscape("plain text").getSafeHtmlString());
+    assertEquals(
+        "&quot;&#39;&amp;&lt;&gt;", SafeHtmls.htmlEscape("\"'&<>").getSafeHtmlString());
+    assertEquals(
+        "&lt;a href=&quot;x&quot;&gt;Tom &amp; Jerry&#39;s&lt;/a&gt;",
+        SafeHtmls.htmlEscape("<a href=\"x\">Tom & Jerry's</a>").getSafeHtmlString());
+    assertEquals("a&lt;b", SafeHtmls.htmlEscape("a<b").getSafeHtmlString());
+    assertEquals("?=;%", SafeHtmls.htmlEscape("?=;%").getSafeHtmlString());
+  }
+
+  public void testHtmlEscape_coercesToInterchangeValid() {
+    // Tab, line feed and carriage return are kept; other controls are replaced.
+    assertEquals(
+        "a\t\n\rb\ufffd\ufffd\ufffd\ufffd",
+        SafeHtmls.htmlEscape("a\t\n\rb\u0000\u001f\u007f\u009f").getSafeHtmlString());
+    // Unpaired surrogates, including a low surrogate following a replaced char.
+    assertEquals(
+        "\ufffdx\ufffd&lt;\ufffd\ufffd",
+        SafeHtmls.htmlEscape("\ud801x\udc96<\udc96\ud801").getSafeHtmlString());
+    // Noncharacters; a supplementary one is replaced once, not once per surrogate.
+    assertEquals(
+        "\ufffd\ufffd\ufffd\ufffd&amp;\ufffd",
+        SafeHtmls.htmlEscape("\ufdd0\ufdef\ufffe\uffff&\ud83f\udffe").getSafeHtmlString());
+    assertEquals("\ufffd", SafeHtmls.htmlEscape("\udbff\udfff").getSafeHtmlString());
+    // Their neighbours are valid.
+    String valid = "\ufdcf\ufdf0\ufffd\ud83f\udffd\ud83e\udfff\ud800\udfff";
+    assertEquals(valid, SafeHtmls.htmlEscape(valid).getSafeHtmlString());
+  }
+
+  public void testHtmlEscape_coercesInEveryEscaper() throws IOException {
+    String text = "<\u0000\udc96\ud83f\udfff";
+    String expected = "&lt;\ufffd\ufffd\ufffd";
+    assertEquals(expected, SafeHtmls.htmlEscape(new StringBuilder(text)).getSafeHtmlString());
+    assertEquals(
+        expected, SafeHtmls.appendHtmlEscaped(new StringBuilder(), new StringBuilder(text))
+            .toString());
+    assertEquals(expected, SafeHtmls.htmlEscapePreservingNewlines(text).getSafeHtmlString());
+    assertEquals(
+        expected + "<br>", SafeHtmls.htmlEscapePreservingWhitespace(text + "\n")
+            .getSafeHtmlString());
+    assertEquals(expected.length(), BuilderUtils.escapedHtmlLength(text));
+  }
+
+  public void testHtmlEscape_returnsSameStringWhenNothingToEscape() {
+    String text = "nothing to escape here";
+    assertSame(text, BuilderUtils.escapeHtmlInternal(text));
+  }
+
+  public void testHtmlEscape_charSequence() {
+    StringBuilder text = new StringBuilder("<a href=\"x\">Tom & Jerry's</a>");
+    assertEquals(
+        "&lt;a href=&quot;x&quot;&gt;Tom &amp; Jerry&#39;s&lt;/a&gt;",
+        SafeHtmls.htmlEscape(text).getSafeHtmlString());
+    assertEquals(
+        "plain text", SafeHtmls.htmlEscape(new StringBuilder("plain text")).getSafeHtmlString());
+  }
+
+  public void testHtmlEscape_charArrayRange() {
+    char[] text = "xx<b>&yy".toCharArray();
+    assertEquals("&lt;b&gt;&amp;", SafeHtmls.htmlEscape(text, 2, 4).getSafeHtmlString());
+    assertEquals("", SafeHtmls.htmlEscape(text, 8, 0).getSafeHtmlString());
+    try {
+      SafeHtmls.htmlEscape(text, 6, 3);
+      fail("Ranges outside the array should be rejected");
+    } catch (IndexOutOfBoundsException expected) {
+    }
+    try {
+      SafeHtmls.htmlEscape(text, 2, -1);
+      fail("Negative lengths should be rejected");
+    } catch (IndexOutOfBoundsException expected) {
+    }
+  }
+
+  public void testHtmlEscape_charArrayRangeCoercesSurrogatesAtItsEnds() {
+    char[] text = "<\ud801\udc96\ud801\udc96>".toCharArray();
+    assertEquals("&lt;\ud801\udc96\ufffd", SafeHtmls.htmlEscape(text, 0, 4).getSafeHtmlString());
+    assertEquals("\ufffd\ud801\udc96&gt;", SafeHtmls.htmlEscape(text, 2, 4).getSafeHtmlString());
+    assertEquals("\ud801\udc96", SafeHtmls.htmlEscape(text, 1, 2).getSafeHtmlString());
+  }
+
+  public void testHtmlEscapeInternal_charSequenceMatchesString() {
+    String[] texts = {
+      "", "plain", "<a>&'\"", "\u0001\ud801x\udc96\uffff", "\udbff\udfff\ud801\udc96"
+    };
+    for (String text : texts) {
+      assertEquals(
+          BuilderUtils.escapeHtmlInternal(text),
+          BuilderUtils.escapeHtmlInternal(new StringBuilder(text)));
+      char[] padded = ("<" + text + ">").toCharArray();
+      assertEquals(
+          BuilderUtils.escapeHtmlInternal(text),
+          BuilderUtils.escapeHtmlInternal(padded, 1, text.length()));
+    }
+  }
+
+  public void testAppendHtmlEscaped() throws IOException {
+    StringBuilder out = new StringBuilder("<p>");
+    assertSame(out, SafeHtmls.appendHtmlEscaped(out, new StringBuilder("Tom & \"Jerry\"")));
+    SafeHtmls.appendHtmlEscaped(out, "plain");
+    assertEquals("<p>Tom &amp; &quot;Jerry&quot;plain", out.toString());
+  }
+
   public void testHtmlEscapePreservingNewlines() {
     assertEquals(
         "a<br>&lt;3<br>", SafeHtmls.htmlEscapePreservingNewlines("a\n<3\r\n").getSafeHtmlString());
@@ -199,6 +359,22 @@ public class SafeHtmlsTest extends TestCase {
         SafeHtmls.htmlEscapePreservingWhitespace("a\t\t b").getSafeHtmlString());
   }
 
+  public void testHtmlEscapePreservingWhitespace_runsOfWhitespace() {
+    assertEquals(
+        "&#160; &#160;a", SafeHtmls.htmlEscapePreservingWhitespace("   a").getSafeHtmlString());
+    assertEquals(
+        "a &#160; &#160;", SafeHtmls.htmlEscapePreservingWhitespace("a    ").getSafeHtmlString());
+    assertEquals(
+        "<br>&#160; <br><br>&#160;",
+        SafeHtmls.htmlEscapePreservingWhitespace("\r\n  \n\r ").getSafeHtmlString());
+    assertEquals(
+        "<span style=\"white-space:pre\">\t</span>&#160; "
+            + "<span style=\"white-space:pre\">\t\t</span>&lt;",
+        SafeHtmls.htmlEscapePreservingWhitespace("\t  \t\t<").getSafeHtmlString());
+    assertEquals(
+        "  <br>\t&amp;", SafeHtmls.htmlEscapePreservingNewlines("  \r\t&").getSafeHtmlString());
+  }
+
   public void testComment() {
     assertEquals("<!--&lt;script&gt;-->", SafeHtmls.comment("<script>").getSafeHtmlString());
   }
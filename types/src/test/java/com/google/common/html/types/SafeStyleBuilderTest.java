@@ -38,6 +38,13 @@ public class SafeStyleBuilderTest extends TestCase {
     assertEquals("", style.getSafeStyleString());
   }
 
+  public void testReset() {
+    SafeStyleBuilder builder = new SafeStyleBuilder().backgroundColor("red").width("1px");
+    assertEquals("background-color:red;width:1px;", builder.build().getSafeStyleString());
+    assertEquals("", builder.reset().build().getSafeStyleString());
+    assertEquals("width:2px;", builder.width("2px").build().getSafeStyleString());
+  }
+
   public void testConstantDisallowsUnsafeCharacters() {
     assertConstantNotAllowed("<");
     assertConstantNotAllowed(">");
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.html.types;
+
+import com.google.common.annotations.GwtCompatible;
+import com.google.common.annotations.GwtIncompatible;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import junit.framework.TestCase;
+
+/** Unit tests for {@link SafeUrlPolicy}. */
+@GwtCompatible
+public class SafeUrlPolicyTest extends TestCase {
+
+  private static final SafeUrl CUSTOM_INNOCUOUS = SafeUrls.fromConstant("javascript:void(0);");
+
+  /** URLs that are safe or not depending on the schemes allowed, in mixed case. */
+  private static final String[] URLS = {
+    "http://example.com/",
+    "HTTPS:x",
+    "mailto:a@b",
+    "ftp://x",
+    "javascript:alert(1)",
+    "JAVASCRIPT:x",
+    "",
+    "foo",
+    "/a:b",
+    "?a:b",
+    "#a:b",
+    "a:b",
+    "tel:123",
+    "TEL:123",
+    "sms:1",
+    "itms-apps:x",
+    "itms-appss:x",
+    "itms_books:x",
+    "data:image/png;base64,abc=",
+    "data:text/html;base64,abc",
+    "\u0130http:x",
+  };
+
+  private static final List<Set<CustomSafeUrlScheme>> SCHEME_SETS =
+      Arrays.<Set<CustomSafeUrlScheme>>asList(
+          EnumSet.noneOf(CustomSafeUrlScheme.class),
+          EnumSet.of(CustomSafeUrlScheme.TEL),
+          EnumSet.of(CustomSafeUrlScheme.TEL, CustomSafeUrlScheme.SMS),
+          EnumSet.allOf(CustomSafeUrlScheme.class));
+
+  public void testSanitize_matchesSafeUrls() {
+    for (Set<CustomSafeUrlScheme> schemes : SCHEME_SETS) {
+      SafeUrlPolicy policy = SafeUrlPolicy.create(schemes, CUSTOM_INNOCUOUS);
+      for (String url : URLS) {
+        assertEquals(SafeUrls.sanitize(url, schemes, CUSTOM_INNOCUOUS), policy.sanitize(url));
+      }
+    }
+    for (String url : URLS) {
+      assertEquals(SafeUrls.sanitize(url), SafeUrlPolicy.DEFAULT.sanitize(url));
+      assertEquals(
+          SafeUrls.sanitizeAsString(url, "irrelevant"),
+          SafeUrlPolicy.DEFAULT.sanitizeAsString(url, "irrelevant"));
+    }
+  }
+
+  public void testSanitize_customSchemes() {
+    SafeUrlPolicy policy = SafeUrlPolicy.create(EnumSet.of(CustomSafeUrlScheme.ITMS_APPS));
+    assertEquals("itms-apps:x", policy.sanitize("itms-apps:x").getSafeUrlString());
+    assertEquals("https://x", policy.sanitize("https://x").getSafeUrlString());
+    assertSame(SafeUrl.INNOCUOUS, policy.sanitize("tel:1"));
+    assertEquals("itms-apps:x", policy.sanitizeAsString("itms-apps:x", "id"));
+    assertEquals("about:invalid#id", policy.sanitizeAsString("tel:1", "id"));
+  }
+
+  public void testSanitize_customInnocuous() {
+    SafeUrlPolicy policy =
+        SafeUrlPolicy.create(EnumSet.noneOf(CustomSafeUrlScheme.class), CUSTOM_INNOCUOUS);
+    assertSame(CUSTOM_INNOCUOUS, policy.getInnocuous());
+    assertSame(CUSTOM_INNOCUOUS, policy.sanitize("javascript:alert(1)"));
+  }
+
+  public void testCreate_copiesSchemes() {
+    Set<CustomSafeUrlScheme> schemes = EnumSet.of(CustomSafeUrlScheme.TEL);
+    SafeUrlPolicy policy = SafeUrlPolicy.create(schemes);
+    schemes.add(CustomSafeUrlScheme.SMS);
+
+    assertEquals(EnumSet.of(CustomSafeUrlScheme.TEL), policy.getExtraAllowedSchemes());
+    assertSame(SafeUrl.INNOCUOUS, policy.sanitize("sms:1"));
+  }
+
+  @GwtIncompatible("SafeUrlPolicy.sanitizeAll")
+  public void testSanitizeAll() {
+    SafeUrlPolicy policy =
+        SafeUrlPolicy.create(EnumSet.of(CustomSafeUrlScheme.TEL), CUSTOM_INNOCUOUS);
+    List<String> urls = Arrays.asList("tel:1", "javascript:2", "/3");
+    assertEquals(
+        Arrays.asList(policy.sanitize("tel:1"), CUSTOM_INNOCUOUS, policy.sanitize("/3")),
+        policy.sanitizeAll(urls));
+  }
+}
@@ -21,6 +21,13 @@ import static com.google.common.html.types.testing.assertions.Assertions.assertC
 import com.google.common.annotations.GwtCompatible;
 import com.google.common.annotations.GwtIncompatible;
 import com.google.common.html.types.testing.HtmlConversions;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 import junit.framework.TestCase;
 
 /** Unit tests for {@link SafeUrls}. */
@@ -97,6 +104,85 @@ public class SafeUrlsTest extends TestCase {
     }
   }
 
+  public void testSanitize_schemesAreCaseInsensitive() {
+    assertEquals("HTTPS://a", SafeUrls.sanitize("HTTPS://a").getSafeUrlString());
+    assertEquals("MailTo:a@b", SafeUrls.sanitize("MailTo:a@b").getSafeUrlString());
+    assertEquals(
+        "ITMS-Apps:x",
+        SafeUrls.sanitize("ITMS-Apps:x", EnumSet.of(CustomSafeUrlScheme.ITMS_APPS))
+            .getSafeUrlString());
+    assertEquals(SafeUrl.INNOCUOUS, SafeUrls.sanitize("httpx:a"));
+    assertEquals(SafeUrl.INNOCUOUS, SafeUrls.sanitize("htt:a"));
+  }
+
+  public void testSanitize_customSchemesAreNotAffectedByLaterChangesToTheSet() {
+    Set<CustomSafeUrlScheme> schemes = EnumSet.of(CustomSafeUrlScheme.TEL);
+    assertEquals("tel:1", SafeUrls.sanitize("tel:1", schemes).getSafeUrlString());
+
+    schemes.add(CustomSafeUrlScheme.SMS);
+    assertEquals("sms:1", SafeUrls.sanitize("sms:1", schemes).getSafeUrlString());
+    assertEquals(
+        SafeUrl.INNOCUOUS, SafeUrls.sanitize("sms:1", EnumSet.of(CustomSafeUrlScheme.TEL)));
+  }
+
+  @GwtIncompatible("SafeUrls.sanitizeAll")
+  public void testSanitizeAll() {
+    List<String> urls = Arrays.asList("https://a", "javascript:b", "tel:c", "/d");
+    assertEquals(
+        Arrays.asList(
+            SafeUrls.sanitize("https://a"),
+            SafeUrl.INNOCUOUS,
+            SafeUrl.INNOCUOUS,
+            SafeUrls.sanitize("/d")),
+        SafeUrls.sanitizeAll(urls));
+
+    SafeUrl innocuous = SafeUrls.fromConstant(CUSTOM_INNOCUOUS_URL);
+    List<SafeUrl> sanitized =
+        SafeUrls.sanitizeAll(urls, EnumSet.of(CustomSafeUrlScheme.TEL), innocuous);
+    assertEquals("tel:c", sanitized.get(2).getSafeUrlString());
+    assertSame(innocuous, sanitized.get(1));
+  }
+
+  @GwtIncompatible("SafeUrls.sanitizeAll")
+  public void testSanitizeAll_largeBatchesInParallel() {
+    List<String> urls = new ArrayList<>();
+    for (int i = 0; i < 3 * SafeUrls.PARALLEL_SANITIZE_THRESHOLD; i++) {
+      urls.add(i % 3 == 0 ? "javascript:" + i : "https://example.com/" + i);
+    }
+    List<SafeUrl> sanitized = SafeUrls.sanitizeAll(urls);
+    assertEquals(urls.size(), sanitized.size());
+    for (int i = 0; i < urls.size(); i++) {
+      if (i % 3 == 0) {
+        assertSame(SafeUrl.INNOCUOUS, sanitized.get(i));
+      } else {
+        assertEquals(urls.get(i), sanitized.get(i).getSafeUrlString());
+      }
+    }
+  }
+
+  public void testSanitize_dataUrls() {
+    String body = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    assertSanitizesToItself("data:image/png;base64," + body);
+    assertSanitizesToItself("DATA:Image/PNG;Base64," + body + "==");
+    assertSanitizesToItself("data:video/x-matroska;base64,AAAA=");
+
+    assertEquals(SafeUrl.INNOCUOUS, SafeUrls.sanitize("data:image/pngx;base64," + body));
+    assertEquals(SafeUrl.INNOCUOUS, SafeUrls.sanitize("data:image/pn;base64," + body));
+    assertEquals(SafeUrl.INNOCUOUS, SafeUrls.sanitize("data:image/png;base64,"));
+    assertEquals(SafeUrl.INNOCUOUS, SafeUrls.sanitize("data:image/png;base64," + body + "=A"));
+    // Invalid characters are caught anywhere in the body, whether in a block of eight or the tail.
+    for (int i = 0; i <= body.length(); i++) {
+      String invalidBody = body.substring(0, i) + "é" + body.substring(i);
+      assertEquals(SafeUrl.INNOCUOUS, SafeUrls.sanitize("data:image/png;base64," + invalidBody));
+      invalidBody = body.substring(0, i) + "-" + body.substring(i);
+      assertEquals(SafeUrl.INNOCUOUS, SafeUrls.sanitize("data:image/png;base64," + invalidBody));
+    }
+  }
+
+  private static void assertSanitizesToItself(String url) {
+    assertEquals(url, SafeUrls.sanitize(url).getSafeUrlString());
+  }
+
   public void testHtmlDataUrl() {
     SafeHtml html =
         HtmlConversions.newSafeHtmlForTest(
@@ -115,6 +201,34 @@ public class SafeUrlsTest extends TestCase {
         dataUrl.getSafeUrlString());
   }
 
+  public void testAppendHtmlDataUrl() throws Exception {
+    StringBuilder longHtml = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      longHtml.append("<p>日本語 ").append(i).append("</p>");
+    }
+    String[] htmls = {"", "a b", "🎉", "<h1>Hello World!!?!</h1>..", longHtml.toString()};
+    for (String html : htmls) {
+      SafeHtml safeHtml = HtmlConversions.newSafeHtmlForTest(html);
+      assertEquals(
+          SafeUrls.createHtmlDataUrl(safeHtml).getSafeUrlString(),
+          SafeUrls.appendHtmlDataUrl(new StringBuilder(), safeHtml).toString());
+    }
+  }
+
+  public void testHtmlDataUrl_unpairedSurrogate() throws Exception {
+    SafeHtml html = HtmlConversions.newSafeHtmlForTest("a\ud800");
+    try {
+      SafeUrls.createHtmlDataUrl(html);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      SafeUrls.appendHtmlDataUrl(new StringBuilder(), html);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
   public void testHtmlDataUrlBase64() {
     SafeHtml html = HtmlConversions.newSafeHtmlForTest("<h1>Hello World!!?!</h1>..");
     SafeUrl dataUrl = SafeUrls.createHtmlDataUrlBase64(html);
@@ -122,4 +236,36 @@ public class SafeUrlsTest extends TestCase {
         "data:text/html;charset=UTF-8;base64,PGgxPkhlbGxvIFdvcmxkISE/ITwvaDE+Li4=",
         dataUrl.getSafeUrlString());
   }
+
+  public void testHtmlDataUrlBase64_nonAsciiAndUnpairedSurrogates() {
+    SafeHtml html = HtmlConversions.newSafeHtmlForTest("é€\ud83c\udf89\ud800x\udc00");
+    // Unpaired surrogates are encoded as '?', as String.getBytes does.
+    assertEquals(
+        "data:text/html;charset=UTF-8;base64,w6nigqzwn46JP3g/",
+        SafeUrls.createHtmlDataUrlBase64(html).getSafeUrlString());
+  }
+
+  public void testAppendHtmlDataUrlBase64() throws Exception {
+    StringBuilder longHtml = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      longHtml.append("<p>日本語 ").append(i).append("</p>");
+    }
+    String[] htmls = {"", "a", "ab", "abc", "<h1>Hello World!!?!</h1>..", longHtml.toString()};
+    for (String html : htmls) {
+      SafeHtml safeHtml = HtmlConversions.newSafeHtmlForTest(html);
+      assertEquals(
+          SafeUrls.createHtmlDataUrlBase64(safeHtml).getSafeUrlString(),
+          SafeUrls.appendHtmlDataUrlBase64(new StringBuilder(), safeHtml).toString());
+    }
+  }
+
+  @GwtIncompatible("WritableByteChannel")
+  public void testWriteHtmlDataUrlBase64() throws Exception {
+    SafeHtml html = HtmlConversions.newSafeHtmlForTest("<h1>Hello World!!?!</h1>..");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    SafeUrls.writeHtmlDataUrlBase64(Channels.newChannel(out), html);
+    assertEquals(
+        "data:text/html;charset=UTF-8;base64,PGgxPkhlbGxvIFdvcmxkISE/ITwvaDE+Li4=",
+        new String(out.toByteArray(), "US-ASCII"));
+  }
 }
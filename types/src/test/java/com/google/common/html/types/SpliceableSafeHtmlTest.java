@@ -221,4 +221,61 @@ public class SpliceableSafeHtmlTest extends TestCase {
     SpliceableSafeHtml spliced = spliceableSafeHtml.spliceSomePreservingPlaceholders(assignments);
     assertEquals("<div>AAA<span>BBB</span><!--after--></div>", spliced.toString());
   }
+
+  public void testCompile_render() throws Exception {
+    SpliceableSafeHtml.Compiled compiled =
+        new SpliceableSafeHtml(
+                ImmutableList.of(
+                    Segment.fromSafeHtml(newSafeHtmlForTest("<div>")),
+                    Segment.fromSafeHtml(newSafeHtmlForTest("<span>")),
+                    Segment.fromPlaceholderLabel("name"),
+                    Segment.fromSafeHtml(newSafeHtmlForTest("</span>")),
+                    Segment.fromPlaceholderLabel("title"),
+                    Segment.fromPlaceholderLabel("name"),
+                    Segment.fromSafeHtml(newSafeHtmlForTest("</div>"))))
+            .compile();
+    assertEquals(ImmutableList.of("name", "title"), compiled.getSlotLabels());
+    assertEquals(1, compiled.getSlot("title"));
+
+    SafeHtml name = newSafeHtmlForTest("AAA");
+    SafeHtml title = newSafeHtmlForTest("BBB");
+    String expected = "<div><span>AAA</span>BBBAAA</div>";
+    assertEquals(expected, compiled.render(name, title).getSafeHtmlString());
+    assertEquals(expected, compiled.renderTo(new StringBuilder(), name, title).toString());
+    assertEquals(
+        "<div><span></span>BBB</div>",
+        compiled.render(SafeHtml.EMPTY, title).getSafeHtmlString());
+  }
+
+  public void testCompile_renderWithoutPlaceholders() {
+    SpliceableSafeHtml.Compiled compiled =
+        new SpliceableSafeHtml(newSafeHtmlForTest("<b>Hello World</b>")).compile();
+    assertEquals(0, compiled.getSlotLabels().size());
+    assertEquals("<b>Hello World</b>", compiled.render().getSafeHtmlString());
+    SpliceableSafeHtml empty = new SpliceableSafeHtml(ImmutableList.<Segment>of());
+    assertEquals("", empty.compile().render().getSafeHtmlString());
+  }
+
+  public void testCompile_renderThrowsOnMissingSlots() {
+    SpliceableSafeHtml.Compiled compiled =
+        new SpliceableSafeHtml(
+                ImmutableList.of(
+                    Segment.fromPlaceholderLabel("a"), Segment.fromPlaceholderLabel("b")))
+            .compile();
+    try {
+      compiled.render(newSafeHtmlForTest("A"));
+      fail("Should throw when a slot is not provided");
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      compiled.render(newSafeHtmlForTest("A"), null);
+      fail("Should throw when a slot is null");
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      compiled.getSlot("c");
+      fail("Should throw on an unknown label");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
 }
@@ -68,6 +68,27 @@ public class TrustedResourceUrlBuilderTest extends TestCase {
     assertEquals("/start?%2F%25foo", builder.build().getTrustedResourceUrlString());
   }
 
+  public void testEncodeAndAppendManySegments() {
+    TrustedResourceUrlBuilder builder = new TrustedResourceUrlBuilder("/scripts/");
+    StringBuilder expected = new StringBuilder("/scripts/");
+    for (int i = 0; i < 1000; i++) {
+      builder.appendEncoded("a b").append("/");
+      expected.append("a+b/");
+    }
+    assertEquals(expected.toString(), builder.build().getTrustedResourceUrlString());
+  }
+
+  public void testEncodeAndAppendFailsAfterLineTerminator() {
+    TrustedResourceUrlBuilder builder = new TrustedResourceUrlBuilder("/path").appendEncoded("a");
+    builder.append("\n");
+    try {
+      builder.appendEncoded("b");
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // No assertThrows
+    }
+  }
+
   public void testEncodeInvalidChars() {
     TrustedResourceUrlBuilder builder = new TrustedResourceUrlBuilder("/q=");
     builder.appendEncoded("?redirect=evil.org");
@@ -122,6 +143,10 @@ public class TrustedResourceUrlBuilderTest extends TestCase {
     assertValidFormat("#a");
     assertValidFormat("path#a");
     assertValidFormat("path/#a");
+    // Line terminators within the prefix.
+    assertValidFormat("/\n");
+    assertValidFormat("a\nb/");
+    assertValidFormat("\n?");
   }
 
   private void assertValidFormat(@CompileTimeConstant String prefix) {
@@ -152,6 +177,9 @@ public class TrustedResourceUrlBuilderTest extends TestCase {
     assertInvalidFormat(""); // Allows appending anything.
     assertInvalidFormat("/"); // Allows appending '/'.
     assertInvalidFormat("path"); // Allows appending ':'.
+    // Line terminators after the prefix.
+    assertInvalidFormat("/path\n");
+    assertInvalidFormat("//google.com/\r\n");
   }
 
   private void assertInvalidFormat(@CompileTimeConstant String prefix) {